@@ -0,0 +1,169 @@
+/*
+ * JMH benchmarks for the ProfNetwork hot paths
+ * ============================================
+ *
+ * Each benchmark runs one of the operations a session makes, through the
+ * same ProfNetwork methods the menus use, against a local database loaded
+ * by sql/scripts/create_db.sh. Build and run them with
+ * java/scripts/bench.sh, which writes the results as JSON together with
+ * the allocation rates of the gc profiler.
+ *
+ * The benchmark is in the profnetwork package because JMH does not run
+ * classes of the default package. bench.sh compiles copies of
+ * ProfNetwork.java and the files it shares classes with into the same
+ * package, the sources themselves are unchanged.
+ *
+ */
+
+package profnetwork;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+
+/**
+ * The users are the first <users> ids of usr that have connections, each
+ * benchmark call takes the next one so the database does not answer the
+ * same row from its cache every time. Messages are sent to them at setup,
+ * marked so teardown can remove them again.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NetworkBench {
+
+   // contents of the messages made by setup
+   static final String MARKER = "jmh benchmark message";
+
+   @Param({"project"})
+   public String dbname;
+
+   @Param({"200"})
+   public int users;
+
+   @Param({"20"})
+   public int messagesPerUser;
+
+   private ProfNetwork esql;
+   private ConnectionGraph graph;
+   private String[] ids;
+   private String[] passwords;
+   private int next = 0;
+
+   @Setup(Level.Trial)
+   public void setup () throws Exception {
+      Class.forName ("org.postgresql.Driver");
+      String port = System.getenv ("PGPORT") == null ? "5432" : System.getenv ("PGPORT");
+      esql = new ProfNetwork (ProfNetwork.connect (dbname, port, System.getProperty ("user.name"), "", 1),
+            null, new PrintStream (new ByteArrayOutputStream ()));
+
+      List<List<String>> rows = esql.executeQueryAndReturnResult (
+         "SELECT userid, password FROM usr WHERE userid IN (SELECT userid FROM connection_edge) ORDER BY userid LIMIT ?", users);
+      ids = new String[rows.size ()];
+      passwords = new String[rows.size ()];
+      for (int i = 0; i < rows.size (); i++){
+         ids[i] = rows.get (i).get (0).trim ();
+         passwords[i] = rows.get (i).get (1).trim ();
+      }//end for
+
+      // data/*.csv has no messages, so every user gets an inbox to page through
+      List<Object[]> messages = new ArrayList<Object[]>();
+      for (int i = 0; i < ids.length; i++){
+         for (int m = 0; m < messagesPerUser; m++){
+            messages.add (new Object[]{ ids[(i + m + 1) % ids.length], ids[i], MARKER });
+         }//end for
+      }//end for
+      esql.executeBatch ("INSERT INTO message (senderId, receiverId, contents, send_time, delete_status, status) VALUES(?, ?, ?, CURRENT_TIMESTAMP, 0, 'Delivered')", messages);
+
+      graph = ConnectionGraph.load (esql);
+   }//end setup
+
+   @TearDown(Level.Trial)
+   public void tearDown () throws SQLException {
+      esql.executeUpdate ("DELETE FROM message WHERE contents = ?", MARKER);
+      esql.getPool ().close ();
+   }//end tearDown
+
+   private int nextUser () {
+      next = (next + 1) % ids.length;
+      return next;
+   }//end nextUser
+
+   /* a page of usr rows read into lists of strings */
+   @Benchmark
+   public List<List<String>> rowMaterialization () throws SQLException {
+      return esql.executeQueryAndReturnResult ("SELECT userid, email, name, date_of_birth FROM usr WHERE userid >= ? ORDER BY userid LIMIT 100", ids[nextUser ()]);
+   }//end rowMaterialization
+
+   /* the credentials check of LogIn and the unread count taken after it */
+   @Benchmark
+   public int login () throws SQLException {
+      int user = nextUser ();
+      int found = esql.executeQuery ("SELECT * FROM USR WHERE userId = ? AND password = ?", ids[user], passwords[user]);
+      esql.getUnreadCounter ().refresh (esql, ids[user]);
+      return found + esql.getUnreadCounter ().get (esql, ids[user]);
+   }//end login
+
+   /* the depth check of SendConnectionRequest, answered from the kept reach set */
+   @Benchmark
+   public boolean depthCheck () {
+      int user = nextUser ();
+      return graph.withinDepth (ids[user], ids[(user * 7 + 3) % ids.length], ConnectionGraph.REACH_DEPTH);
+   }//end depthCheck
+
+   /* the same check for a user whose reach set was never made */
+   @Benchmark
+   public boolean depthCheckFromScratch () {
+      int user = nextUser ();
+      graph.forget (ids[user]);
+      return graph.withinDepth (ids[user], ids[(user * 7 + 3) % ids.length], ConnectionGraph.REACH_DEPTH);
+   }//end depthCheckFromScratch
+
+   /* the friend list of UserConnect.ConnectionList */
+   @Benchmark
+   public List<String> friendList () throws SQLException {
+      NumberedListPrinter list = new NumberedListPrinter (esql.out, "\nConnection List: ");
+      esql.executeQueryAndStream ("SELECT connectionid FROM connection_edge WHERE userid = ?", list, ids[nextUser ()]);
+      return list.values;
+   }//end friendList
+
+   /* the first page of Show all received messages */
+   @Benchmark
+   public void inbox (Blackhole bh) throws SQLException {
+      MessagePager pager = new MessagePager ("SELECT msgid, senderid, send_time FROM message WHERE receiverid = ? AND (status = 'Delivered' OR status = 'Read') AND (delete_status = 0 OR delete_status = 1)",
+            ids[nextUser ()], esql.pageSize);
+      bh.consume (pager.first (esql));
+      pager.print (esql.out);
+   }//end inbox
+
+   /* a whole profile with work and education, without the profile cache */
+   @Benchmark
+   public Object profile () throws SQLException {
+      return UserProfile.load (esql, ids[nextUser ()]);
+   }//end profile
+
+}//end NetworkBench
@@ -0,0 +1,26 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# JMH_CP is the classpath of the JMH jars: jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3, e.g.
+# export JMH_CP=$HOME/jmh/jmh-core-1.37.jar:$HOME/jmh/jmh-generator-annprocess-1.37.jar:$HOME/jmh/jopt-simple-5.0.4.jar:$HOME/jmh/commons-math3-3.6.1.jar
+if [ -z "$JMH_CP" ]; then
+	echo "Set JMH_CP to the classpath of the JMH jars first" >&2
+	exit 1
+fi
+
+# JMH does not run benchmarks of the default package, so ProfNetwork.java and
+# the classes it shares with other files are compiled into the profnetwork
+# package together with the benchmarks
+BUILD=$DIR/../bench-classes
+rm -rf $BUILD
+mkdir -p $BUILD/src
+for SRC in ProfNetwork RowHandler CompactBitmap ConnectionGraph UserProfile MessagePager NumberedListPrinter; do
+	{ echo "package profnetwork;"; cat $DIR/../src/$SRC.java; } > $BUILD/src/$SRC.java
+done
+javac -cp $JMH_CP -d $BUILD $BUILD/src/*.java $DIR/../bench/NetworkBench.java || exit 1
+
+# runs against the database made by sql/scripts/create_db.sh on $PGPORT as $USER.
+# extra arguments go to JMH, e.g. a benchmark name regex or -p users=500
+RESULTS=${RESULTS:-$DIR/../bench-results.json}
+java -cp $BUILD:$JMH_CP:$DIR/../lib/pg73jdbc3.jar org.openjdk.jmh.Main -prof gc -rf json -rff $RESULTS "$@"
+echo "results written to $RESULTS"
@@ -1,13 +1,25 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
-# Indicate the path of the java compiler to use
-export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+# Indicate the path of the java compiler to use. With JDK 21 or newer the
+# -server process runs each session on a virtual thread, older JDKs fall
+# back to a pool of platform threads
+export JAVA_HOME=/usr/lib/jvm/java-21-openjdk-amd64
 export PATH=$JAVA_HOME/bin:$PATH
 
 # compile the java program
-javac -d $DIR/../classes $DIR/../src/ProfNetwork.java
+javac -d $DIR/../classes $DIR/../src/ProfNetwork.java $DIR/../src/RowHandler.java $DIR/../src/CompactBitmap.java $DIR/../src/ConnectionGraph.java $DIR/../src/UserProfile.java $DIR/../src/MessagePager.java $DIR/../src/NumberedListPrinter.java $DIR/../src/LoadDriver.java $DIR/../src/BulkLoader.java $DIR/../src/ChurnBench.java $DIR/../src/ProfileBench.java
 
 #run the java program
 #Use your database name, port number and login
 java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfNetwork project $PGPORT bstev002
 
+#to serve many users from one process add -server <listen port> [<pool size>]
+#java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfNetwork project $PGPORT bstev002 -server 5050 8
+#replay a scripted session against the server: <listen port> <script> <sessions> <concurrency>
+#java -cp $DIR/../classes LoadDriver 5050 $DIR/load_session.txt 10000 1000
+#time incremental updates of the 3 level reach sets against Connection.csv: <csv> [<users>]
+#java -cp $DIR/../classes ChurnBench $DIR/../../data/Connection.csv 2000
+#compare the three query and the single query profile reads: [<users> [<rounds>]]
+#java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfileBench project $PGPORT bstev002 500 5
+#JMH benchmarks of the query, graph and profile paths, results saved as json (needs JMH_CP)
+#$DIR/bench.sh
@@ -0,0 +1,402 @@
+/*
+ * Bulk loader for the ProfNetwork database
+ * ========================================
+ *
+ * Loads the csv files of the data directory into tables created by
+ * create_tables.sql. The secondary indexes of create_index.sql are
+ * dropped first and built again once all the rows are in, and tables
+ * that do not depend on each other are loaded at the same time.
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+
+/**
+ * Streams each csv file into its table with COPY FROM STDIN when the
+ * driver has the copy api, and with batched INSERTs when it does not
+ * (the pg73 driver in java/lib). Dates such as 1949/07/27 are rewritten
+ * as 1949-07-27 on the way in.
+ *
+ */
+public class BulkLoader {
+
+   // rows per batch when COPY is not available
+   static final int BATCH_SIZE = 1000;
+
+   // yyyy/mm/dd, yyyy-m-d and yyyy.mm.dd are all accepted
+   static final Pattern DATE = Pattern.compile("(\\d{4})[/.-](\\d{1,2})[/.-](\\d{1,2})");
+
+   /*
+    * The tables in load order. Tables of the same phase are loaded in
+    * parallel, work_expr and educational_details wait for usr because
+    * of their foreign keys.
+    **/
+   static final Table[][] PHASES = {
+      { new Table("usr", "Users.csv", "userId, password, email, name, date_of_birth"),
+        new Table("connection_usr", "Connection.csv", "userId, connectionId, status") },
+      { new Table("work_expr", "Work_Ex.csv", "userId, company, role, location, start_date, end_date"),
+        new Table("educational_details", "Edu_Det.csv", "userId, institution_name, major, degree, start_date, end_date") }
+   };
+
+   private final String url;
+   private final String user;
+   private final String passwd;
+
+   public BulkLoader (String url, String user, String passwd) {
+      this.url = url;
+      this.user = user;
+      this.passwd = passwd;
+   }//end BulkLoader
+
+   /**
+    * The main execution method
+    *
+    * @param args <dbname> <port> <user> <data dir> <sql dir>
+    */
+   public static void main (String[] args) throws Exception {
+      if (args.length != 5) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            BulkLoader.class.getName () +
+            " <dbname> <port> <user> <data dir> <sql dir>");
+         return;
+      }//end if
+
+      Class.forName("org.postgresql.Driver");
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      BulkLoader loader = new BulkLoader(url, args[2], "");
+      Path data = Paths.get(args[3]);
+      Path sql = Paths.get(args[4]);
+
+      long start = System.nanoTime();
+      loader.runScript(sql.resolve("drop_index.sql"));
+      for (Table[] phase : PHASES){
+         loader.load(phase, data);
+      }//end for
+      long loaded = System.nanoTime();
+      loader.runScript(sql.resolve("create_index.sql"));
+      loader.runScript("ANALYZE");
+      long end = System.nanoTime();
+
+      System.out.println(String.format("indexes and analyze: %.2fs", (end - loaded) / 1e9));
+      System.out.println(String.format("total: %.2fs", (end - start) / 1e9));
+   }//end main
+
+   /*
+    * Loads the tables of one phase, each on its own connection, and
+    * waits for all of them
+    **/
+   void load (Table[] phase, final Path data) throws Exception {
+      ExecutorService workers = Executors.newFixedThreadPool(phase.length);
+      try{
+         List<Future<Void>> results = new ArrayList<Future<Void>>();
+         for (final Table table : phase){
+            results.add(workers.submit(new Callable<Void>(){
+               public Void call() throws Exception {
+                  long start = System.nanoTime();
+                  long rows = loadTable(table, data.resolve(table.file));
+                  double seconds = (System.nanoTime() - start) / 1e9;
+                  System.out.println(String.format("%-20s rows=%d elapsed=%.2fs rate=%.0f rows/s",
+                     table.name, rows, seconds, rows / seconds));
+                  return null;
+               }
+            }));
+         }//end for
+         for (Future<Void> result : results){
+            result.get();
+         }//end for
+      }finally{
+         workers.shutdown();
+      }
+   }//end load
+
+   /*
+    * Loads one csv file into its table and returns the number of rows
+    **/
+   long loadTable (Table table, Path file) throws IOException, SQLException {
+      Connection conn = DriverManager.getConnection(url, user, passwd);
+      try{
+         BufferedReader csv = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+         try{
+            // the first line only names the columns
+            csv.readLine();
+            Object copyApi = copyApi(conn);
+            if (copyApi != null){
+               return copy(copyApi, table, csv);
+            }
+            return insert(conn, table, csv);
+         }finally{
+            csv.close();
+         }
+      }finally{
+         conn.close();
+      }
+   }//end loadTable
+
+   /*
+    * Returns the CopyManager of the connection, or null when the driver
+    * is too old to have one
+    **/
+   static Object copyApi (Connection conn) {
+      try{
+         Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+         if (!pgConnection.isInstance(conn)){
+            return null;
+         }
+         return pgConnection.getMethod("getCopyAPI").invoke(conn);
+      }catch (Exception e){
+         return null;
+      }
+   }//end copyApi
+
+   static long copy (Object copyApi, Table table, BufferedReader csv) throws IOException, SQLException {
+      CsvRowReader rows = new CsvRowReader(csv);
+      String sql = "COPY " + table.name + " (" + table.columns + ") FROM STDIN WITH CSV";
+      try{
+         Method copyIn = copyApi.getClass().getMethod("copyIn", String.class, Reader.class);
+         copyIn.invoke(copyApi, sql, rows);
+      }catch (java.lang.reflect.InvocationTargetException e){
+         if (e.getCause() instanceof SQLException){
+            throw (SQLException) e.getCause();
+         }
+         throw new IOException(e.getCause());
+      }catch (ReflectiveOperationException e){
+         throw new IOException(e);
+      }
+      return rows.getRows();
+   }//end copy
+
+   static long insert (Connection conn, Table table, BufferedReader csv) throws IOException, SQLException {
+      int columns = table.columns.split(",").length;
+      StringBuilder sql = new StringBuilder("INSERT INTO " + table.name + " (" + table.columns + ") VALUES (");
+      for (int i = 0; i < columns; i++){
+         sql.append(i == 0 ? "?" : ", ?");
+      }
+      sql.append(")");
+
+      // BEGIN and COMMIT are sent as statements, setAutoCommit(false) of the
+      // pg73 driver sends SET autocommit, which servers after 7.3 reject
+      Statement control = conn.createStatement();
+      PreparedStatement stmt = null;
+      boolean open = false;
+      long rows = 0;
+      try{
+         control.execute("BEGIN");
+         open = true;
+         stmt = conn.prepareStatement(sql.toString());
+         String line;
+         while ((line = csv.readLine()) != null){
+            List<String> fields = parse(line);
+            for (int i = 0; i < columns; i++){
+               String value = i < fields.size() ? fields.get(i) : null;
+               if (value == null){
+                  stmt.setNull(i + 1, Types.VARCHAR);
+               }else{
+                  stmt.setString(i + 1, value);
+               }
+            }//end for
+            stmt.addBatch();
+            if (++rows % BATCH_SIZE == 0){
+               stmt.executeBatch();
+            }
+         }//end while
+         stmt.executeBatch();
+         control.execute("COMMIT");
+         open = false;
+      }catch (SQLException e){
+         if (open){
+            try{
+               control.execute("ROLLBACK");
+            }catch (SQLException ignored){
+            }
+         }
+         throw e;
+      }finally{
+         if (stmt != null){
+            stmt.close();
+         }
+         control.close();
+      }
+      return rows;
+   }//end insert
+
+   /*
+    * Runs each statement of a sql file, or a single statement
+    **/
+   void runScript (Path file) throws IOException, SQLException {
+      runScript(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+   }//end runScript
+
+   void runScript (String script) throws SQLException {
+      Connection conn = DriverManager.getConnection(url, user, passwd);
+      try{
+         Statement stmt = conn.createStatement();
+         try{
+            for (String sql : script.replaceAll("(?s)/\\*.*?\\*/", "").split(";")){
+               if (sql.trim().length() > 0){
+                  stmt.executeUpdate(sql.trim());
+               }
+            }//end for
+         }finally{
+            stmt.close();
+         }
+      }finally{
+         conn.close();
+      }
+   }//end runScript
+
+   /*
+    * Splits one csv line into its fields. Quotes are removed, empty
+    * unquoted fields become null and dates are normalized.
+    **/
+   static List<String> parse (String line) {
+      List<String> fields = new ArrayList<String>();
+      StringBuilder field = new StringBuilder();
+      boolean quoted = false;
+      boolean wasQuoted = false;
+      for (int i = 0; i < line.length(); i++){
+         char c = line.charAt(i);
+         if (quoted){
+            if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+               field.append('"');
+               i++;
+            }else if (c == '"'){
+               quoted = false;
+            }else{
+               field.append(c);
+            }
+         }else if (c == '"'){
+            quoted = true;
+            wasQuoted = true;
+         }else if (c == ','){
+            fields.add(value(field, wasQuoted));
+            field.setLength(0);
+            wasQuoted = false;
+         }else{
+            field.append(c);
+         }
+      }//end for
+      fields.add(value(field, wasQuoted));
+      return fields;
+   }//end parse
+
+   static String value (StringBuilder field, boolean wasQuoted) {
+      if (field.length() == 0 && !wasQuoted){
+         return null;
+      }
+      return normalizeDate(field.toString());
+   }//end value
+
+   /*
+    * Rewrites yyyy/m/d style dates as yyyy-mm-dd, other values are
+    * returned unchanged
+    **/
+   static String normalizeDate (String value) {
+      Matcher m = DATE.matcher(value.trim());
+      if (!m.matches()){
+         return value;
+      }
+      return m.group(1) + "-" + pad(m.group(2)) + "-" + pad(m.group(3));
+   }//end normalizeDate
+
+   static String pad (String part) {
+      return part.length() == 1 ? "0" + part : part;
+   }//end pad
+
+   /* one table and the csv file it is loaded from */
+   static class Table {
+      final String name;
+      final String file;
+      final String columns;
+
+      Table (String name, String file, String columns) {
+         this.name = name;
+         this.file = file;
+         this.columns = columns;
+      }
+   }//end Table
+
+   /*
+    * Feeds COPY one normalized csv line at a time, so the file is never
+    * held in memory
+    **/
+   static class CsvRowReader extends Reader {
+      private final BufferedReader csv;
+      private String line = "";
+      private int pos = 0;
+      private long rows = 0;
+
+      CsvRowReader (BufferedReader csv) {
+         this.csv = csv;
+      }
+
+      public int read (char[] buffer, int off, int len) throws IOException {
+         if (line == null){
+            return -1;
+         }
+         while (pos == line.length()){
+            String next = csv.readLine();
+            if (next == null){
+               line = null;
+               return -1;
+            }
+            line = format(parse(next));
+            pos = 0;
+            rows++;
+         }//end while
+         int n = Math.min(len, line.length() - pos);
+         line.getChars(pos, pos + n, buffer, off);
+         pos += n;
+         return n;
+      }
+
+      public void close () {
+         // the csv file is closed by loadTable
+      }
+
+      long getRows () {
+         return rows;
+      }
+
+      /* writes the fields back as a csv line, nulls are left empty */
+      static String format (List<String> fields) {
+         StringBuilder out = new StringBuilder();
+         for (int i = 0; i < fields.size(); i++){
+            if (i > 0){
+               out.append(',');
+            }
+            String field = fields.get(i);
+            if (field != null){
+               out.append('"').append(field.replace("\"", "\"\"")).append('"');
+            }
+         }//end for
+         return out.append('\n').toString();
+      }
+   }//end CsvRowReader
+
+}//end BulkLoader
@@ -0,0 +1,117 @@
+/*
+ * Churn benchmark for the connection graph
+ * ========================================
+ *
+ * Replays the accepted rows of Connection.csv as accept events against
+ * a ConnectionGraph and reports how long each update of the kept
+ * 3 level reach sets took. No database is needed.
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+
+/**
+ * The first half of the accepted connections are loaded and the reach
+ * of up to <users> of their users is computed, as if they had logged
+ * in. The second half is then added one connection at a time and each
+ * addConnection call is timed. For comparison the same users have their
+ * reach searched for again from scratch, which is what every check cost
+ * before the sets were kept.
+ *
+ */
+public class ChurnBench {
+
+   /**
+    * The main execution method
+    *
+    * @param args <Connection.csv> [<users>]
+    */
+   public static void main (String[] args) throws Exception {
+      if (args.length < 1 || args.length > 2) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            ChurnBench.class.getName () +
+            " <Connection.csv> [<users>]");
+         return;
+      }//end if
+      int users = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+      List<String[]> accepts = new ArrayList<String[]>();
+      BufferedReader csv = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+      try{
+         csv.readLine();
+         String line;
+         while ((line = csv.readLine()) != null){
+            List<String> fields = BulkLoader.parse(line);
+            if ("Accept".equals(fields.get(2))){
+               accepts.add(new String[]{ fields.get(0), fields.get(1) });
+            }
+         }//end while
+      }finally{
+         csv.close();
+      }
+
+      ConnectionGraph graph = new ConnectionGraph();
+      int half = accepts.size() / 2;
+      Set<String> loggedIn = new LinkedHashSet<String>();
+      for (int i = 0; i < half; i++){
+         graph.addConnection(accepts.get(i)[0], accepts.get(i)[1]);
+         if (loggedIn.size() < users){
+            loggedIn.add(accepts.get(i)[0]);
+         }
+      }//end for
+      for (String user : loggedIn){
+         graph.withinDepth(user, accepts.get(0)[1], ConnectionGraph.REACH_DEPTH);
+      }//end for
+
+      long[] updates = new long[accepts.size() - half];
+      for (int i = half; i < accepts.size(); i++){
+         long start = System.nanoTime();
+         graph.addConnection(accepts.get(i)[0], accepts.get(i)[1]);
+         updates[i - half] = System.nanoTime() - start;
+      }//end for
+
+      long[] recomputes = new long[loggedIn.size()];
+      int n = 0;
+      for (String user : loggedIn){
+         graph.forget(user);
+         long start = System.nanoTime();
+         graph.withinDepth(user, accepts.get(0)[1], ConnectionGraph.REACH_DEPTH);
+         recomputes[n++] = System.nanoTime() - start;
+      }//end for
+
+      System.out.println(String.format("accepts=%d preloaded=%d replayed=%d kept reach sets=%d",
+         accepts.size(), half, updates.length, loggedIn.size()));
+      report("incremental update", updates);
+      report("search from scratch", recomputes);
+      System.out.println(String.format("connection and reach sets: %.1f KB", graph.sizeInBytes() / 1024.0));
+   }//end main
+
+   static void report (String label, long[] latencies) {
+      if (latencies.length == 0){
+         return;
+      }
+      Arrays.sort(latencies);
+      System.out.println(String.format("%-20s us: p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+         label, percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+         latencies[latencies.length - 1] / 1e3));
+   }//end report
+
+   static double percentile (long[] sorted, int p) {
+      int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1e3;
+   }//end percentile
+
+}//end ChurnBench
@@ -0,0 +1,305 @@
+import java.util.Arrays;
+
+
+
+/**************************************************
+* CompactBitmap class
+* Purpose: Set of non negative ints kept the way
+*		   roaring bitmaps keep them. Values are split
+*		   by their high 16 bits into chunks; a chunk
+*		   holds a sorted char array of its low 16 bits
+*		   until it has more than ARRAY_MAX values and a
+*		   65536 bit long array after that. A user with
+*		   a handful of connections costs a few bytes,
+*		   not a bit for every user in the network.
+*
+**************************************************/
+class CompactBitmap{
+	private static final int ARRAY_MAX = 4096;
+	private static final int BITMAP_WORDS = 1024;
+
+	// chunks sorted by their high 16 bits
+	private char[] keys = new char[0];
+	private char[][] arrays = new char[0][];
+	private int[] counts = new int[0];
+	private long[][] bitmaps = new long[0][];
+	private int chunks = 0;
+	private int cardinality = 0;
+
+	/* adds the value, returns false if it was already there */
+	public boolean add(int value){
+		int chunk = findChunk((char) (value >>> 16));
+		if(chunk < 0){
+			chunk = insertChunk(-chunk - 1, (char) (value >>> 16));
+		}
+		char low = (char) value;
+		if(bitmaps[chunk] != null){
+			long bit = 1L << (low & 63);
+			if((bitmaps[chunk][low >>> 6] & bit) != 0){
+				return false;
+			}
+			bitmaps[chunk][low >>> 6] |= bit;
+		} else {
+			char[] values = arrays[chunk];
+			int n = counts[chunk];
+			int i = Arrays.binarySearch(values, 0, n, low);
+			if(i >= 0){
+				return false;
+			}
+			i = -i - 1;
+			if(n == ARRAY_MAX){
+				toBitmap(chunk);
+				return add(value);
+			}
+			if(n == values.length){
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, n * 2)));
+				arrays[chunk] = values;
+			}
+			System.arraycopy(values, i, values, i + 1, n - i);
+			values[i] = low;
+		}
+		counts[chunk]++;
+		cardinality++;
+		return true;
+	}
+
+	/* a binary search of the chunks, then a bit test or a binary search of the array chunk */
+	public boolean contains(int value){
+		int chunk = findChunk((char) (value >>> 16));
+		if(chunk < 0){
+			return false;
+		}
+		char low = (char) value;
+		if(bitmaps[chunk] != null){
+			return (bitmaps[chunk][low >>> 6] & (1L << (low & 63))) != 0;
+		}
+		return Arrays.binarySearch(arrays[chunk], 0, counts[chunk], low) >= 0;
+	}
+
+	public int cardinality(){
+		return cardinality;
+	}
+
+	/* the smallest value at or above from, or -1 */
+	public int nextSetBit(int from){
+		int chunk = findChunk((char) (from >>> 16));
+		int low = from & 0xFFFF;
+		if(chunk < 0){
+			chunk = -chunk - 1;
+			low = 0;
+		}
+		for(; chunk < chunks; chunk++, low = 0){
+			int high = keys[chunk] << 16;
+			if(bitmaps[chunk] != null){
+				long[] words = bitmaps[chunk];
+				int word = low >>> 6;
+				long bits = words[word] & (-1L << (low & 63));
+				while(true){
+					if(bits != 0){
+						return high | (word << 6) | Long.numberOfTrailingZeros(bits);
+					}
+					if(++word == BITMAP_WORDS){
+						break;
+					}
+					bits = words[word];
+				}
+			} else {
+				int i = Arrays.binarySearch(arrays[chunk], 0, counts[chunk], (char) low);
+				if(i < 0){
+					i = -i - 1;
+				}
+				if(i < counts[chunk]){
+					return high | arrays[chunk][i];
+				}
+			}
+		}
+		return -1;
+	}
+
+	/* the values in both sets, intersected chunk by chunk like andCardinality */
+	public CompactBitmap and(CompactBitmap other){
+		CompactBitmap result = new CompactBitmap();
+		int i = 0;
+		int j = 0;
+		while(i < chunks && j < other.chunks){
+			if(keys[i] < other.keys[j]){
+				i++;
+			} else if(keys[i] > other.keys[j]){
+				j++;
+			} else {
+				result.chunkAnd(keys[i], this, i, other, j);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/* how many values are in both sets, without building the result */
+	public int andCardinality(CompactBitmap other){
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while(i < chunks && j < other.chunks){
+			if(keys[i] < other.keys[j]){
+				i++;
+			} else if(keys[i] > other.keys[j]){
+				j++;
+			} else {
+				count += chunkAndCardinality(i, other, j);
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/* approximate bytes held by the chunks */
+	public long sizeInBytes(){
+		long bytes = 16 + chunks * 8L;
+		for(int i = 0; i < chunks; i++){
+			bytes += bitmaps[i] != null ? BITMAP_WORDS * 8L : arrays[i].length * 2L;
+		}
+		return bytes;
+	}
+
+	private int chunkAndCardinality(int i, CompactBitmap other, int j){
+		int count = 0;
+		if(bitmaps[i] != null && other.bitmaps[j] != null){
+			for(int w = 0; w < BITMAP_WORDS; w++){
+				count += Long.bitCount(bitmaps[i][w] & other.bitmaps[j][w]);
+			}
+		} else if(bitmaps[i] != null || other.bitmaps[j] != null){
+			long[] words = bitmaps[i] != null ? bitmaps[i] : other.bitmaps[j];
+			char[] values = bitmaps[i] != null ? other.arrays[j] : arrays[i];
+			int n = bitmaps[i] != null ? other.counts[j] : counts[i];
+			for(int k = 0; k < n; k++){
+				if((words[values[k] >>> 6] & (1L << (values[k] & 63))) != 0){
+					count++;
+				}
+			}
+		} else {
+			// both sorted, so merge them
+			char[] a = arrays[i];
+			char[] b = other.arrays[j];
+			int x = 0;
+			int y = 0;
+			while(x < counts[i] && y < other.counts[j]){
+				if(a[x] < b[y]){
+					x++;
+				} else if(a[x] > b[y]){
+					y++;
+				} else {
+					count++;
+					x++;
+					y++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/* appends the intersection of chunk i of a and chunk j of b, which both hold the values of high */
+	private void chunkAnd(char high, CompactBitmap a, int i, CompactBitmap b, int j){
+		if(a.bitmaps[i] != null && b.bitmaps[j] != null){
+			long[] words = new long[BITMAP_WORDS];
+			int count = 0;
+			for(int w = 0; w < BITMAP_WORDS; w++){
+				words[w] = a.bitmaps[i][w] & b.bitmaps[j][w];
+				count += Long.bitCount(words[w]);
+			}
+			if(count > ARRAY_MAX){
+				appendChunk(high, null, words, count);
+			} else if(count > 0){
+				// small enough for an array chunk again
+				char[] values = new char[count];
+				int n = 0;
+				for(int w = 0; w < BITMAP_WORDS; w++){
+					for(long bits = words[w]; bits != 0; bits &= bits - 1){
+						values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(bits));
+					}
+				}
+				appendChunk(high, values, null, count);
+			}
+		} else if(a.bitmaps[i] != null || b.bitmaps[j] != null){
+			long[] words = a.bitmaps[i] != null ? a.bitmaps[i] : b.bitmaps[j];
+			char[] from = a.bitmaps[i] != null ? b.arrays[j] : a.arrays[i];
+			int n = a.bitmaps[i] != null ? b.counts[j] : a.counts[i];
+			char[] values = new char[n];
+			int count = 0;
+			for(int k = 0; k < n; k++){
+				if((words[from[k] >>> 6] & (1L << (from[k] & 63))) != 0){
+					values[count++] = from[k];
+				}
+			}
+			if(count > 0){
+				appendChunk(high, values, null, count);
+			}
+		} else {
+			// both sorted, so merge them
+			char[] x = a.arrays[i];
+			char[] y = b.arrays[j];
+			char[] values = new char[Math.min(a.counts[i], b.counts[j])];
+			int count = 0;
+			int p = 0;
+			int q = 0;
+			while(p < a.counts[i] && q < b.counts[j]){
+				if(x[p] < y[q]){
+					p++;
+				} else if(x[p] > y[q]){
+					q++;
+				} else {
+					values[count++] = x[p];
+					p++;
+					q++;
+				}
+			}
+			if(count > 0){
+				appendChunk(high, values, null, count);
+			}
+		}
+	}
+
+	/* adds a chunk after the last one, either values holding count sorted values or words */
+	private void appendChunk(char high, char[] values, long[] words, int count){
+		int i = insertChunk(chunks, high);
+		arrays[i] = words == null ? values : null;
+		bitmaps[i] = words;
+		counts[i] = count;
+		cardinality += count;
+	}
+
+	private int findChunk(char high){
+		return Arrays.binarySearch(keys, 0, chunks, high);
+	}
+
+	private int insertChunk(int i, char high){
+		if(chunks == keys.length){
+			int capacity = Math.max(1, chunks * 2);
+			keys = Arrays.copyOf(keys, capacity);
+			arrays = Arrays.copyOf(arrays, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			bitmaps = Arrays.copyOf(bitmaps, capacity);
+		}
+		System.arraycopy(keys, i, keys, i + 1, chunks - i);
+		System.arraycopy(arrays, i, arrays, i + 1, chunks - i);
+		System.arraycopy(counts, i, counts, i + 1, chunks - i);
+		System.arraycopy(bitmaps, i, bitmaps, i + 1, chunks - i);
+		keys[i] = high;
+		arrays[i] = new char[0];
+		counts[i] = 0;
+		bitmaps[i] = null;
+		chunks++;
+		return i;
+	}
+
+	private void toBitmap(int chunk){
+		long[] words = new long[BITMAP_WORDS];
+		for(int k = 0; k < counts[chunk]; k++){
+			char low = arrays[chunk][k];
+			words[low >>> 6] |= 1L << (low & 63);
+		}
+		bitmaps[chunk] = words;
+		arrays[chunk] = null;
+	}
+} // end CompactBitmap
@@ -0,0 +1,412 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**************************************************
+* ConnectionGraph class
+* Purpose: Holds the accepted connections in memory
+*		   so the connection level checks can be
+*		   answered without building a table for
+*		   every user that logs in. Users are mapped
+*		   to dense int ids and each id keeps its
+*		   connections in a CompactBitmap. The set of users within
+*		   3 levels is kept for the MAX_REACH_SETS users
+*		   asked about most recently and updated as
+*		   connections are added, so it is not searched
+*		   for again.
+*
+**************************************************/
+class ConnectionGraph{
+	private static final int INITIAL_USERS = 1024;
+
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] names = new String[INITIAL_USERS];
+	private CompactBitmap[] friends = new CompactBitmap[INITIAL_USERS];
+	private int size = 0;
+
+	// scratch arrays for the search, a node is visited when visited[node] == stamp
+	private int[] visited = new int[INITIAL_USERS];
+	private int[] queue = new int[INITIAL_USERS];
+	private int stamp = 0;
+
+	// users within REACH_DEPTH levels, only for the users that were asked about most recently
+	public static final int REACH_DEPTH = 3;
+	public static final int MAX_REACH_SETS = Integer.getInteger("profnetwork.reachSets", 10000);
+	// access ordered so the eldest entry is the least recently used one
+	private Map<Integer, CompactBitmap> reach = new LinkedHashMap<Integer, CompactBitmap>(INITIAL_USERS, 0.75f, true){
+		protected boolean removeEldestEntry(Map.Entry<Integer, CompactBitmap> eldest){
+			return size() > MAX_REACH_SETS;
+		}
+	};
+
+	/*********************************************
+	* Method Name: load
+	* Purpose: Builds the graph from every accepted
+	* connection, each pair is read once from
+	* connection_edge
+	*
+	* Input: ProfNetwork object
+	*
+	* Output: ConnectionGraph object
+	*
+	**********************************************/
+	public static ConnectionGraph load(ProfNetwork esql) throws SQLException{
+		final ConnectionGraph graph = new ConnectionGraph();
+		esql.executeQueryAndStream("SELECT userid, connectionid FROM connection_edge WHERE userid < connectionid", new RowHandler(){
+			public void row(ResultSet rs) throws SQLException{
+				graph.addConnection(rs.getString(1).trim(), rs.getString(2).trim());
+			}
+		});
+		return graph;
+	}
+
+	/*********************************************
+	* Method Name: addConnection
+	* Purpose: Adds an accepted connection in both
+	* directions. Every new path of at most 3 levels
+	* goes through the new connection, so only users
+	* within 2 levels of either end can gain reach:
+	* x at distance i from one end reaches y at
+	* distance j from the other when i + 1 + j <= 3.
+	*
+	* Input: String userA, String userB
+	*
+	* Output: None
+	*
+	**********************************************/
+	public synchronized void addConnection(String userA, String userB){
+		int a = intern(userA);
+		int b = intern(userB);
+		if(a == b || friends[a].contains(b)){
+			return;
+		}
+		int[][] nearA = reach.isEmpty() ? null : near(a, REACH_DEPTH - 1);
+		int[][] nearB = reach.isEmpty() ? null : near(b, REACH_DEPTH - 1);
+		friends[a].add(b);
+		friends[b].add(a);
+		if(nearA != null){
+			extendReach(nearA, nearB);
+			extendReach(nearB, nearA);
+		}
+	}
+
+	/* true if the two users are direct connections */
+	public synchronized boolean isConnected(String userA, String userB){
+		Integer a = ids.get(userA);
+		Integer b = ids.get(userB);
+		if(a == null || b == null){
+			return false;
+		}
+		return friends[a].contains(b);
+	}
+
+	/* user ids of the direct connections of a user */
+	public synchronized List<String> connectionsOf(String userId){
+		List<String> result = new ArrayList<String>();
+		Integer id = ids.get(userId);
+		if(id != null){
+			CompactBitmap edges = friends[id];
+			for(int next = edges.nextSetBit(0); next >= 0; next = edges.nextSetBit(next + 1)){
+				result.add(names[next]);
+			}
+		}
+		return result;
+	}
+
+	/* user ids connected to both users */
+	public synchronized List<String> mutualConnections(String userA, String userB){
+		List<String> result = new ArrayList<String>();
+		Integer a = ids.get(userA);
+		Integer b = ids.get(userB);
+		if(a != null && b != null){
+			CompactBitmap mutual = friends[a].and(friends[b]);
+			for(int next = mutual.nextSetBit(0); next >= 0; next = mutual.nextSetBit(next + 1)){
+				result.add(names[next]);
+			}
+		}
+		return result;
+	}
+
+	/* number of users connected to both users */
+	public synchronized int mutualCount(String userA, String userB){
+		Integer a = ids.get(userA);
+		Integer b = ids.get(userB);
+		if(a == null || b == null){
+			return 0;
+		}
+		return friends[a].andCardinality(friends[b]);
+	}
+
+	/* approximate bytes used by the connection and kept reach sets */
+	public synchronized long sizeInBytes(){
+		long bytes = 0;
+		for(int i = 0; i < size; i++){
+			bytes += friends[i].sizeInBytes();
+		}
+		for(CompactBitmap set : reach.values()){
+			bytes += set.sizeInBytes();
+		}
+		return bytes;
+	}
+
+	/* every user id in the graph */
+	public synchronized List<String> users(){
+		return new ArrayList<String>(Arrays.asList(names).subList(0, size));
+	}
+
+	/* user ids at most depth levels from the user, the user included */
+	public synchronized List<String> usersWithin(String userId, int depth){
+		List<String> result = new ArrayList<String>();
+		Integer id = ids.get(userId);
+		if(id != null){
+			for(int node : near(id, depth)[0]){
+				result.add(names[node]);
+			}
+		}
+		return result;
+	}
+
+	/* users 2 levels away that are not connections, with their number of mutual connections */
+	public synchronized Map<String, Integer> secondLevel(String userId){
+		Map<String, Integer> result = new HashMap<String, Integer>();
+		Integer id = ids.get(userId);
+		if(id == null){
+			return result;
+		}
+		CompactBitmap direct = friends[id];
+		for(int f = direct.nextSetBit(0); f >= 0; f = direct.nextSetBit(f + 1)){
+			CompactBitmap edges = friends[f];
+			for(int next = edges.nextSetBit(0); next >= 0; next = edges.nextSetBit(next + 1)){
+				if(next != id && !direct.contains(next)){
+					Integer count = result.get(names[next]);
+					result.put(names[next], count == null ? 1 : count + 1);
+				}
+			}
+		}
+		return result;
+	}
+
+	/* number of direct connections of a user */
+	public synchronized int connectionCount(String userId){
+		Integer id = ids.get(userId);
+		if(id == null){
+			return 0;
+		}
+		return friends[id].cardinality();
+	}
+
+	/*********************************************
+	* Method Name: withinDepth
+	* Purpose: Breadth first search from the source
+	* that stops after maxDepth levels or as soon
+	* as the target is found
+	*
+	* Input: String source, String target, int maxDepth
+	*
+	* Output: true if the target is at most maxDepth
+	* connections away from the source
+	*
+	**********************************************/
+	public synchronized boolean withinDepth(String source, String target, int maxDepth){
+		Integer src = ids.get(source);
+		Integer dst = ids.get(target);
+		if(src == null || dst == null || src.intValue() == dst.intValue()){
+			return false;
+		}
+		if(maxDepth == REACH_DEPTH){
+			return reachable(src).contains(dst);
+		}
+		nextStamp();
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = src;
+		visited[src] = stamp;
+		for(int depth = 0; depth < maxDepth && head < tail; depth++){
+			int levelEnd = tail;
+			while(head < levelEnd){
+				int node = queue[head++];
+				CompactBitmap edges = friends[node];
+				for(int next = edges.nextSetBit(0); next >= 0; next = edges.nextSetBit(next + 1)){
+					if(next == dst){
+						return true;
+					}
+					if(visited[next] != stamp){
+						visited[next] = stamp;
+						queue[tail++] = next;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/*********************************************
+	* Method Name: distances
+	* Purpose: One breadth first search from the
+	* source that finds how many connections away
+	* each target is, stopping after maxDepth levels
+	* or once every target is found
+	*
+	* Input: String source, List of target ids,
+	*		 int maxDepth
+	*
+	* Output: the distance of each target in list
+	* order, 0 when it is further than maxDepth
+	*
+	**********************************************/
+	public synchronized int[] distances(String source, List<String> targets, int maxDepth){
+		int[] result = new int[targets.size()];
+		Integer src = ids.get(source);
+		if(src == null){
+			return result;
+		}
+		Map<Integer, List<Integer>> wanted = new HashMap<Integer, List<Integer>>();
+		for(int i = 0; i < targets.size(); i++){
+			Integer id = ids.get(targets.get(i));
+			if(id != null && id.intValue() != src.intValue()){
+				List<Integer> positions = wanted.get(id);
+				if(positions == null){
+					positions = new ArrayList<Integer>();
+					wanted.put(id, positions);
+				}
+				positions.add(i);
+			}
+		}
+		nextStamp();
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = src;
+		visited[src] = stamp;
+		for(int depth = 1; depth <= maxDepth && head < tail && !wanted.isEmpty(); depth++){
+			int levelEnd = tail;
+			while(head < levelEnd){
+				int node = queue[head++];
+				CompactBitmap edges = friends[node];
+				for(int next = edges.nextSetBit(0); next >= 0; next = edges.nextSetBit(next + 1)){
+					if(visited[next] != stamp){
+						visited[next] = stamp;
+						queue[tail++] = next;
+						List<Integer> positions = wanted.remove(next);
+						if(positions != null){
+							for(int position : positions){
+								result[position] = depth;
+							}
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/* makes the kept reach of a user ahead of its first use, returns its size */
+	public synchronized int warm(String userId){
+		Integer id = ids.get(userId);
+		return id == null ? 0 : reachable(id).cardinality();
+	}
+
+	/* drops the kept reach of a user, it is searched for again when next asked */
+	public synchronized void forget(String userId){
+		Integer id = ids.get(userId);
+		if(id != null){
+			reach.remove(id);
+		}
+	}
+
+	/* the users within REACH_DEPTH levels of src, searched for on first use */
+	private CompactBitmap reachable(int src){
+		CompactBitmap set = reach.get(src);
+		if(set == null){
+			int[][] found = near(src, REACH_DEPTH);
+			set = new CompactBitmap();
+			for(int node : found[0]){
+				if(node != src){
+					set.add(node);
+				}
+			}
+			reach.put(src, set);
+		}
+		return set;
+	}
+
+	/* users at most depth levels from src and their distances, src included at 0 */
+	private int[][] near(int src, int depth){
+		nextStamp();
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = src;
+		visited[src] = stamp;
+		int[] dist = new int[16];
+		dist[0] = 0;
+		for(int level = 1; level <= depth && head < tail; level++){
+			int levelEnd = tail;
+			while(head < levelEnd){
+				int node = queue[head++];
+				CompactBitmap edges = friends[node];
+				for(int next = edges.nextSetBit(0); next >= 0; next = edges.nextSetBit(next + 1)){
+					if(visited[next] != stamp){
+						visited[next] = stamp;
+						if(tail == dist.length){
+							dist = Arrays.copyOf(dist, tail * 2);
+						}
+						dist[tail] = level;
+						queue[tail++] = next;
+					}
+				}
+			}
+		}
+		return new int[][]{ Arrays.copyOf(queue, tail), Arrays.copyOf(dist, tail) };
+	}
+
+	/* adds to each kept set of from the users of to that the new connection brings in range */
+	private void extendReach(int[][] from, int[][] to){
+		for(int i = 0; i < from[0].length; i++){
+			CompactBitmap set = reach.get(from[0][i]);
+			if(set == null){
+				continue;
+			}
+			for(int j = 0; j < to[0].length && from[1][i] + 1 + to[1][j] <= REACH_DEPTH; j++){
+				if(to[0][j] != from[0][i]){
+					set.add(to[0][j]);
+				}
+			}
+		}
+	}
+
+	private int intern(String userId){
+		Integer id = ids.get(userId);
+		if(id != null){
+			return id;
+		}
+		if(size == names.length){
+			int capacity = names.length * 2;
+			String[] newNames = new String[capacity];
+			System.arraycopy(names, 0, newNames, 0, size);
+			names = newNames;
+			friends = Arrays.copyOf(friends, capacity);
+			int[] newVisited = new int[capacity];
+			System.arraycopy(visited, 0, newVisited, 0, size);
+			visited = newVisited;
+			queue = new int[capacity];
+		}
+		names[size] = userId;
+		friends[size] = new CompactBitmap();
+		ids.put(userId, size);
+		return size++;
+	}
+
+	private void nextStamp(){
+		stamp++;
+		if(stamp == Integer.MAX_VALUE){
+			Arrays.fill(visited, 0);
+			stamp = 1;
+		}
+	}
+} // end ConnectionGraph
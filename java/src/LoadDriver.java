@@ -0,0 +1,129 @@
+/*
+ * Load driver for the ProfNetwork session server
+ * ==============================================
+ *
+ * Replays a scripted session against a server started with
+ * ProfNetwork <dbname> <port> <user> -server <listen port>
+ * and reports how many sessions per second the server completed.
+ *
+ */
+
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/**
+ * Opens many concurrent sessions, each one sends the whole script as
+ * its input, reads the server output until the session ends and
+ * records how long that took.
+ *
+ */
+public class LoadDriver {
+
+   /**
+    * The main execution method
+    *
+    * @param args <listen port> <script file> <sessions> <concurrency>
+    */
+   public static void main (String[] args) throws Exception {
+      if (args.length != 4) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            LoadDriver.class.getName () +
+            " <listen port> <script file> <sessions> <concurrency>");
+         return;
+      }//end if
+
+      final int port = Integer.parseInt(args[0]);
+      final byte[] script = Files.readAllBytes(Paths.get(args[1]));
+      int sessions = Integer.parseInt(args[2]);
+      int concurrency = Integer.parseInt(args[3]);
+
+      final long[] latencies = new long[sessions];
+      final AtomicInteger failures = new AtomicInteger();
+      final Semaphore slots = new Semaphore(concurrency);
+      final CountDownLatch done = new CountDownLatch(sessions);
+      ExecutorService workers = ProfNetwork.newSessionExecutor();
+
+      long start = System.nanoTime();
+      for (int i = 0; i < sessions; i++){
+         final int session = i;
+         slots.acquire();
+         workers.execute(new Runnable(){
+            public void run(){
+               try{
+                  latencies[session] = replay(port, script);
+               }catch (IOException e){
+                  latencies[session] = -1;
+                  failures.incrementAndGet();
+               }finally{
+                  slots.release();
+                  done.countDown();
+               }
+            }
+         });
+      }//end for
+      done.await();
+      long elapsed = System.nanoTime() - start;
+      workers.shutdown();
+
+      long[] completed = new long[sessions - failures.get()];
+      int n = 0;
+      for (int i = 0; i < sessions; i++){
+         if (latencies[i] >= 0){
+            completed[n++] = latencies[i];
+         }
+      }//end for
+      Arrays.sort(completed);
+
+      double seconds = elapsed / 1e9;
+      System.out.println(String.format("sessions=%d failed=%d concurrency=%d elapsed=%.2fs rate=%.1f sessions/s",
+         sessions, failures.get(), concurrency, seconds, completed.length / seconds));
+      if (completed.length > 0){
+         System.out.println(String.format("session latency ms: p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+            percentile(completed, 50), percentile(completed, 90), percentile(completed, 99),
+            completed[completed.length - 1] / 1e6));
+      }
+   }//end main
+
+   /*
+    * Runs one scripted session and returns its duration in nanoseconds
+    **/
+   static long replay (int port, byte[] script) throws IOException {
+      long start = System.nanoTime();
+      Socket socket = new Socket("localhost", port);
+      try{
+         OutputStream out = socket.getOutputStream();
+         out.write(script);
+         out.flush();
+         // end of input ends the session once the script has been read
+         socket.shutdownOutput();
+         InputStream in = socket.getInputStream();
+         byte[] buffer = new byte[8192];
+         while (in.read(buffer) != -1){
+            // the menus are not checked, only drained
+         }
+      }finally{
+         socket.close();
+      }
+      return System.nanoTime() - start;
+   }//end replay
+
+   static double percentile (long[] sorted, int p) {
+      int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1e6;
+   }//end percentile
+
+}//end LoadDriver
@@ -0,0 +1,116 @@
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+
+/********************************************************
+* MessagePager Class
+* Purpose: Pages through a message list newest first.
+*		   Pages are found from the (send_time, msgid)
+*		   of the rows on screen instead of an OFFSET,
+*		   so every page is one index range scan no
+*		   matter how far back the user goes.
+*
+*		   The select must return msgid as its first
+*		   column and send_time as its last one.
+*
+********************************************************/
+class MessagePager{
+	private final String select;
+	private final String owner;
+	private int pageSize;
+	private List<List<String>> page = new ArrayList<List<String>>();
+	private boolean hasOlder = false;
+	private boolean hasNewer = false;
+	private int pageNumber = 0;
+
+	public MessagePager(String select, String owner, int pageSize){
+		this.select = select;
+		this.owner = owner;
+		this.pageSize = pageSize;
+	}
+
+	public void setPageSize(int pageSize){
+		this.pageSize = pageSize;
+	}
+
+	/* loads the newest page, false if there are no messages */
+	public boolean first(ProfNetwork esql) throws SQLException{
+		List<List<String>> rows = esql.executeQueryAndReturnResult(select + " ORDER BY send_time DESC, msgid DESC LIMIT ?", owner, pageSize + 1);
+		hasOlder = rows.size() > pageSize;
+		hasNewer = false;
+		pageNumber = 1;
+		page = trim(rows);
+		return !page.isEmpty();
+	}
+
+	/* loads the page after the last row shown, false if there is none */
+	public boolean older(ProfNetwork esql) throws SQLException{
+		if(!hasOlder){
+			return false;
+		}
+		List<String> last = page.get(page.size() - 1);
+		List<List<String>> rows = esql.executeQueryAndReturnResult(select + " AND send_time <= CAST(? AS timestamp) AND (send_time, msgid) < (CAST(? AS timestamp), ?) ORDER BY send_time DESC, msgid DESC LIMIT ?",
+			owner, sendTime(last), sendTime(last), msgId(last), pageSize + 1);
+		if(rows.isEmpty()){
+			hasOlder = false;
+			return false;
+		}
+		hasOlder = rows.size() > pageSize;
+		hasNewer = true;
+		pageNumber++;
+		page = trim(rows);
+		return true;
+	}
+
+	/* loads the page before the first row shown, false if there is none */
+	public boolean newer(ProfNetwork esql) throws SQLException{
+		if(!hasNewer){
+			return false;
+		}
+		List<String> first = page.get(0);
+		List<List<String>> rows = esql.executeQueryAndReturnResult(select + " AND send_time >= CAST(? AS timestamp) AND (send_time, msgid) > (CAST(? AS timestamp), ?) ORDER BY send_time ASC, msgid ASC LIMIT ?",
+			owner, sendTime(first), sendTime(first), msgId(first), pageSize + 1);
+		if(rows.isEmpty()){
+			hasNewer = false;
+			return false;
+		}
+		hasNewer = rows.size() > pageSize;
+		hasOlder = true;
+		pageNumber = Math.max(1, pageNumber - 1);
+		page = trim(rows);
+		// the newer rows come back oldest first
+		Collections.reverse(page);
+		return true;
+	}
+
+	/* prints the current page the same way executeQueryAndPrintResult does */
+	public void print(PrintStream out){
+		for(int i = 0; i < page.size(); i++){
+			List<String> row = page.get(i);
+			for(int j = 0; j < row.size(); j++){
+				out.print(row.get(j) + "\t");
+			}
+			out.println();
+		}
+		out.println("\nPage " + pageNumber + (hasOlder ? " (more older messages)" : "") + "\n");
+	}
+
+	private List<List<String>> trim(List<List<String>> rows){
+		if(rows.size() > pageSize){
+			return new ArrayList<List<String>>(rows.subList(0, pageSize));
+		}
+		return rows;
+	}
+
+	private static Integer msgId(List<String> row){
+		return Integer.valueOf(row.get(0).trim());
+	}
+
+	private static String sendTime(List<String> row){
+		return row.get(row.size() - 1);
+	}
+} // end MessagePager
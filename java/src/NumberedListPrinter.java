@@ -0,0 +1,42 @@
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+
+/********************************************************
+* NumberedListPrinter Class
+* Purpose: Prints the first column of each streamed row
+*		   as a numbered list and keeps only those
+*		   values so a menu can refer to them by number.
+*
+********************************************************/
+class NumberedListPrinter implements RowHandler{
+	private final PrintStream out;
+	private final String header;
+	public final List<String> values = new ArrayList<String>();
+
+	public NumberedListPrinter(PrintStream out, String header){
+		this.out = out;
+		this.header = header;
+	}
+
+	public void row(ResultSet rs) throws SQLException{
+		if(values.isEmpty()){
+			out.println(header);
+		}
+		String value = rs.getString(1);
+		values.add(value);
+		out.println(""+values.size()+". " + ""+value+"");
+	}
+
+	/* prints the kept values again, numbered from 1 */
+	public void reprint(){
+		out.println(header);
+		for(int i = 0; i < values.size(); i++){
+			out.println(""+(i + 1)+". " + ""+values.get(i)+"");
+		}
+	}
+} // end NumberedListPrinter
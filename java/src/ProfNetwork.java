@@ -20,6 +20,8 @@ Group #50
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.Types;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -27,8 +29,43 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 
 
 
@@ -42,13 +79,61 @@ import java.util.ArrayList;
 
 public class ProfNetwork {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
-	
-      // handling the keyboard inputs through a BufferedReader
-   // This variable can be global for convenience.
-   public static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
+   // default pool settings, used when they are not given on the command line
+   public static final int DEFAULT_POOL_SIZE = 8;
+   public static final long DEFAULT_MAX_WAIT = 5000;
+   public static final long DEFAULT_IDLE_TIMEOUT = 300000;
+
+   // rows fetched per round trip by executeQueryAndStream
+   public static final int FETCH_SIZE = 500;
+
+   // cleared the first time the driver turns down setFetchSize
+   private static volatile boolean _cursors = true;
+
+   // messages per page, can be set with -Dprofnetwork.pageSize=<n>
+   public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("profnetwork.pageSize", 20);
+
+   // pool of physical database connections, shared by every session of a server
+   private ConnectionPool _pool = null;
+
+   // true when this instance created the pool and has to close it
+   private boolean _ownsPool = false;
+
+   // in memory copy of the accepted connections, shared by every session
+   private static ConnectionGraph _graph = null;
+
+   // unread message count of each user, shared by every session
+   private static final UnreadCounter _unread = new UnreadCounter();
+
+   // read receipts waiting to be written, shared by every session
+   private static final ReadReceipts _receipts = new ReadReceipts(ReadReceipts.BATCH_SIZE, ReadReceipts.FLUSH_INTERVAL);
+
+   // recently shown profiles, shared by every session
+   private static final ProfileCache _profiles = new ProfileCache(
+      Integer.getInteger("profnetwork.profileCacheSize", ProfileCache.DEFAULT_CAPACITY),
+      Long.getLong("profnetwork.profileTtl", ProfileCache.DEFAULT_TTL));
+
+   // in memory index of every userId and name, shared by every session
+   private static UserDirectory _users = null;
+
+   // people you may know suggestions, shared by every session
+   private static Recommender _recommender = null;
+
+   // latency and rows of every query template, queries slower than
+   // -Dprofnetwork.slowQueryMillis=<n> are also written to the slow query log
+   private static final QueryStats _queries = new QueryStats(
+      Long.getLong("profnetwork.slowQueryMillis", QueryStats.DEFAULT_SLOW_MILLIS), System.err);
+
+   // handling the keyboard inputs through a BufferedReader
+   // Each session has its own reader and writer.
+   public BufferedReader in = null;
+   public PrintStream out = null;
+
+   // set when the session input reached end of stream
+   private boolean _closed = false;
+
+   // number of messages shown per page by the inbox and outbox
+   public int pageSize = DEFAULT_PAGE_SIZE;
 
    /**
     * Creates a new instance of ProfNetwork
@@ -60,22 +145,67 @@ public class ProfNetwork {
     * @throws java.sql.SQLException when failed to make a connection.
     */
    public ProfNetwork (String dbname, String dbport, String user, String passwd) throws SQLException {
+      this (connect (dbname, dbport, user, passwd, LoginWarmup.TASKS),
+            new BufferedReader(new InputStreamReader(System.in)), System.out);
+      this._ownsPool = true;
+   }//end ProfNetwork
+
+   /**
+    * Creates a new session that borrows its connections from a shared pool
+    * and talks to the user through the given reader and writer.
+    *
+    * @param pool the pool of database connections
+    * @param in the session input
+    * @param out the session output
+    */
+   public ProfNetwork (ConnectionPool pool, BufferedReader in, PrintStream out) {
+      this._pool = pool;
+      this.in = in;
+      this.out = out;
+   }//end ProfNetwork
 
+   /**
+    * Creates the connection pool and checks that the database can be reached.
+    *
+    * @param maxSize the maximum number of open connections
+    * @return the connection pool
+    */
+   public static ConnectionPool connect (String dbname, String dbport, String user, String passwd, int maxSize) {
       System.out.print("Connecting to database...");
+      ConnectionPool pool = null;
       try{
          // constructs the connection URL
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
          // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         pool = new ConnectionPool(url, user, passwd, maxSize, DEFAULT_MAX_WAIT, DEFAULT_IDLE_TIMEOUT);
+         pool.release(pool.borrow());
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
          System.out.println("Make sure you started postgres on this machine");
          System.exit(-1);
       }//end catch
-   }//end ProfNetwork
+      return pool;
+   }//end connect
+
+   /**
+    * Creates the executor the server runs its sessions on. Each session
+    * gets its own virtual thread when the JVM has them (Java 21), so idle
+    * sessions blocked on their socket do not hold a platform thread. Older
+    * JVMs get a cached pool of platform threads instead.
+    *
+    * @return the session executor
+    */
+   public static ExecutorService newSessionExecutor () {
+      try{
+         Method factory = Executors.class.getMethod ("newVirtualThreadPerTaskExecutor");
+         return (ExecutorService) factory.invoke (null);
+      }catch (Exception e){
+         return Executors.newCachedThreadPool ();
+      }//end try
+   }//end newSessionExecutor
 
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
@@ -85,60 +215,199 @@ public class ProfNetwork {
     * @throws java.sql.SQLException when update failed
     */
    public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int rowCount = QueryStats.FAILED;
+      try{
+         // creates a statement object
+         Statement stmt = conn.connection.createStatement ();
 
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+         // issues the update instruction
+         rowCount = stmt.executeUpdate (sql);
+
+         // close the instruction
+         stmt.close ();
+      }catch (SQLException e){
+         conn.suspect ();
+         throw e;
+      }finally{
+         this._pool.release (conn);
+         _queries.record (sql, System.nanoTime () - start, rowCount);
+      }
+   }//end executeUpdate
 
-      // close the instruction
-      stmt.close ();
+   /**
+    * Method to execute a parameterized update SQL statement. The statement
+    * is prepared once per connection and the parameters are bound to the
+    * '?' placeholders in order.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the number of rows changed
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int rowCount = QueryStats.FAILED;
+      try{
+         PreparedStatement stmt = conn.statements.prepare (sql, params);
+         rowCount = stmt.executeUpdate ();
+         return rowCount;
+      }catch (SQLException e){
+         conn.suspect ();
+         throw e;
+      }finally{
+         this._pool.release (conn);
+         _queries.record (sql, System.nanoTime () - start, rowCount);
+      }
    }//end executeUpdate
 
+   /**
+    * Method to execute a parameterized update SQL statement once for each
+    * row of parameters. The rows are sent as one JDBC batch between BEGIN and
+    * COMMIT on one connection, so either every row is applied or none is.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @param rows the values bound to the placeholders, one array per row
+    * @return the number of rows changed
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeBatch (String sql, List<Object[]> rows) throws SQLException {
+      return rowsChanged (executeBatchCounts (sql, rows));
+   }//end executeBatch
+
+   /**
+    * Method to execute a batch like executeBatch, returning the number of
+    * rows each row of parameters changed so the caller can tell which of
+    * them matched nothing.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @param rows the values bound to the placeholders, one array per row
+    * @return the update count of each row, in order, or
+    *         Statement.SUCCESS_NO_INFO where the driver does not know it
+    * @throws java.sql.SQLException when update failed
+    */
+   public int[] executeBatchCounts (String sql, List<Object[]> rows) throws SQLException {
+      if (rows.isEmpty ()){
+         return new int[0];
+      }
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int changed = QueryStats.FAILED;
+      boolean open = false;
+      try{
+         // the transaction is opened with a BEGIN statement: setAutoCommit(false)
+         // of the bundled 7.3 driver sends SET autocommit, which servers after
+         // 7.3 reject
+         conn.run ("BEGIN");
+         open = true;
+         PreparedStatement stmt = null;
+         for (Object[] row : rows){
+            stmt = conn.statements.prepare (sql, row);
+            stmt.addBatch ();
+         }
+         int[] counts = stmt.executeBatch ();
+         conn.run ("COMMIT");
+         open = false;
+         changed = rowsChanged (counts);
+         return counts;
+      }catch (SQLException e){
+         conn.suspect ();
+         if (open){
+            try{
+               conn.run ("ROLLBACK");
+            }catch (SQLException ignored){
+            }
+         }//end if
+         throw e;
+      }finally{
+         this._pool.release (conn);
+         _queries.record (sql, System.nanoTime () - start, changed);
+      }
+   }//end executeBatchCounts
+
+   private static int rowsChanged (int[] counts) {
+      int rowCount = 0;
+      for (int count : counts){
+         // drivers may report SUCCESS_NO_INFO instead of a count
+         rowCount += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+      }
+      return rowCount;
+   }
+
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
-    * standard out.
+    * the session output.
     *
     * @param query the input query string
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int rowCount = QueryStats.FAILED;
+      try{
+         // creates a statement object
+         Statement stmt = conn.connection.createStatement ();
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery (query);
+         rowCount = printResult (rs);
+         stmt.close ();
+         return rowCount;
+      }catch (SQLException e){
+         conn.suspect ();
+         throw e;
+      }finally{
+         this._pool.release (conn);
+         _queries.record (query, System.nanoTime () - start, rowCount);
+      }
+   }//end executeQuery
+
+   /**
+    * Method to execute a parameterized query and output the results to
+    * the session output.
+    *
+    * @param query the query template with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      final PrintStream out = this.out;
+      int rowCount = executeQueryAndStream (query, new RowHandler(){
+         public void row (ResultSet rs) throws SQLException {
+            int numCol = rs.getMetaData ().getColumnCount ();
+            for (int i=1; i<=numCol; ++i){
+               out.print (rs.getString (i) + "\t");
+            }
+            out.println ();
+         }
+      }, params);
+      this.out.println("\n");
+      return rowCount;
+   }//end executeQueryAndPrintResult
 
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = false;
+   /*
+    * Prints every row of the result set, one tab separated line per row
+    * @return the number of rows printed
+    **/
+   private int printResult (ResultSet rs) throws SQLException {
+      int numCol = rs.getMetaData ().getColumnCount ();
+      int rowCount = 0;
       while (rs.next()){
-		if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-				System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		}
          for (int i=1; i<=numCol; ++i){
-            System.out.print (rs.getString (i) + "\t");
-		 }
-         System.out.println ();
+            this.out.print (rs.getString (i) + "\t");
+         }
+         this.out.println ();
          ++rowCount;
       }//end while
-      stmt.close ();
-	  System.out.println("\n");
+      this.out.println("\n");
       return rowCount;
-   }//end executeQuery
+   }//end printResult
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -150,33 +419,141 @@ public class ProfNetwork {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int rowCount = QueryStats.FAILED;
+      try{
+         // creates a statement object
+         Statement stmt = conn.connection.createStatement ();
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery (query);
+         List<List<String>> result = readResult (rs);
+         stmt.close ();
+         rowCount = result.size ();
+         return result;
+      }catch (SQLException e){
+         conn.suspect ();
+         throw e;
+      }finally{
+         this._pool.release (conn);
+         _queries.record (query, System.nanoTime () - start, rowCount);
+      }
+   }//end executeQueryAndReturnResult
+
+   /**
+    * Method to execute a parameterized query and return the results as
+    * a list of records.
+    *
+    * @param query the query template with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int rowCount = QueryStats.FAILED;
+      try{
+         PreparedStatement stmt = conn.statements.prepare (query, params);
+         ResultSet rs = stmt.executeQuery ();
+         List<List<String>> result = readResult (rs);
+         rs.close ();
+         rowCount = result.size ();
+         return result;
+      }catch (SQLException e){
+         conn.suspect ();
+         throw e;
+      }finally{
+         this._pool.release (conn);
+         _queries.record (query, System.nanoTime () - start, rowCount);
+      }
+   }//end executeQueryAndReturnResult
 
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
+   /*
+    * Copies every row of the result set into a list of records
+    **/
+   private static List<List<String>> readResult (ResultSet rs) throws SQLException {
+      int numCol = rs.getMetaData ().getColumnCount ();
       List<List<String>> result  = new ArrayList<List<String>>();
       while (rs.next()){
-          List<String> record = new ArrayList<String>();
+         List<String> record = new ArrayList<String>(numCol);
          for (int i=1; i<=numCol; ++i){
             record.add(rs.getString (i));
-		 }
+         }
          result.add(record);
       }//end while
-      stmt.close ();
       return result;
-   }//end executeQueryAndReturnResult
+   }//end readResult
+
+   /**
+    * Method to execute a parameterized query and hand each row to the
+    * handler as soon as it arrives. The rows are fetched through a cursor
+    * FETCH_SIZE at a time, so memory use does not grow with the result.
+    * Drivers without cursor support (the pg73 driver in java/lib) read the
+    * whole result at once instead, the rows are still handed over one by one.
+    *
+    * @param query the query template with '?' placeholders
+    * @param handler called once for every row
+    * @param params the values bound to the placeholders
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndStream (String query, RowHandler handler, Object... params) throws SQLException {
+      PooledConnection conn = this._pool.borrow ();
+      long start = System.nanoTime ();
+      int streamed = QueryStats.FAILED;
+      boolean cursor = false;
+      try{
+         PreparedStatement stmt = conn.statements.prepare (query, params);
+         cursor = useCursor (stmt);
+         if (cursor){
+            // the driver only uses a cursor inside a transaction
+            conn.connection.setAutoCommit (false);
+         }
+         ResultSet rs = stmt.executeQuery ();
+         int rowCount = 0;
+         while (rs.next()){
+            handler.row (rs);
+            ++rowCount;
+         }//end while
+         rs.close ();
+         streamed = rowCount;
+         return rowCount;
+      }catch (SQLException e){
+         conn.suspect ();
+         throw e;
+      }finally{
+         if (cursor){
+            try{
+               // ends the read only transaction
+               conn.connection.setAutoCommit (true);
+            }catch (SQLException e){
+               conn.suspect ();
+            }
+         }
+         this._pool.release (conn);
+         // includes the time the handler spent on each row
+         _queries.record (query, System.nanoTime () - start, streamed);
+      }
+   }//end executeQueryAndStream
+
+   /*
+    * Asks the statement to fetch FETCH_SIZE rows at a time. Returns false,
+    * and stops asking, when the driver does not implement setFetchSize.
+    **/
+   private static boolean useCursor (PreparedStatement stmt) {
+      if (!_cursors){
+         return false;
+      }
+      try{
+         stmt.setFetchSize (FETCH_SIZE);
+         return true;
+      }catch (SQLException e){
+         _cursors = false;
+         return false;
+      }
+   }//end useCursor
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -187,20 +564,62 @@ public class ProfNetwork {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+       PooledConnection conn = this._pool.borrow ();
+       long start = System.nanoTime ();
+       int rowCount = QueryStats.FAILED;
+       try{
+          // creates a statement object
+          Statement stmt = conn.connection.createStatement ();
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+          // issues the query instruction
+          ResultSet rs = stmt.executeQuery (query);
 
-       int rowCount = 0;
+          rowCount = 0;
 
-       // iterates through the result set and count nuber of results.
-       if(rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
+          // iterates through the result set and count nuber of results.
+          if(rs.next()){
+             rowCount++;
+          }//end while
+          stmt.close ();
+          return rowCount;
+       }catch (SQLException e){
+          conn.suspect ();
+          throw e;
+       }finally{
+          this._pool.release (conn);
+          _queries.record (query, System.nanoTime () - start, rowCount);
+       }
+   }
+
+   /**
+    * Method to execute a parameterized query and return the number of
+    * results (0 or 1, only the first row is fetched).
+    *
+    * @param query the query template with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query, Object... params) throws SQLException {
+       PooledConnection conn = this._pool.borrow ();
+       long start = System.nanoTime ();
+       int rowCount = QueryStats.FAILED;
+       try{
+          PreparedStatement stmt = conn.statements.prepare (query, params);
+          ResultSet rs = stmt.executeQuery ();
+          rowCount = 0;
+          if(rs.next()){
+             rowCount++;
+          }
+          rs.close ();
+          return rowCount;
+       }catch (SQLException e){
+          conn.suspect ();
+          throw e;
+       }finally{
+          this._pool.release (conn);
+          _queries.record (query, System.nanoTime () - start, rowCount);
+       }
    }
 
    /**
@@ -213,25 +632,125 @@ public class ProfNetwork {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
-
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
+	List<List<String>> result = executeQueryAndReturnResult (String.format("Select currval('%s')", sequence));
+	if (!result.isEmpty())
+		return Integer.parseInt(result.get(0).get(0));
 	return -1;
    }
 
    /**
-    * Method to close the physical connection if it is open.
+    * Method to get the connection graph used for the connection depth
+    * checks. The graph is loaded from connection_edge the first time it
+    * is asked for and kept up to date by the accept path after that.
+    *
+    * @return the graph of accepted connections
+    * @throws java.sql.SQLException when failed to load the graph
+    */
+   public ConnectionGraph getConnectionGraph() throws SQLException {
+      synchronized (ProfNetwork.class){
+         if (_graph == null){
+            _graph = ConnectionGraph.load(this);
+         }
+         return _graph;
+      }
+   }
+
+   /**
+    * Method to get the index of user ids and names used to check typed
+    * user ids and suggest close ones. It is loaded from usr the first time
+    * it is asked for and CreateUser adds new users to it.
+    *
+    * @return the user directory
+    * @throws java.sql.SQLException when failed to load the directory
+    */
+   public UserDirectory getUserDirectory() throws SQLException {
+      synchronized (ProfNetwork.class){
+         if (_users == null){
+            _users = UserDirectory.load(this);
+         }
+         return _users;
+      }
+   }
+
+   /**
+    * Method to get the people you may know suggestions. They are loaded
+    * with the companies and schools of every user the first time they are
+    * asked for; the server also works them out for every user on a
+    * background thread.
+    *
+    * @return the recommender
+    * @throws java.sql.SQLException when failed to load the recommender
+    */
+   public Recommender getRecommender() throws SQLException {
+      synchronized (ProfNetwork.class){
+         if (_recommender == null){
+            _recommender = Recommender.load(this, getConnectionGraph());
+         }
+         return _recommender;
+      }
+   }
+
+   /**
+    * Method to get the cache of profiles shown by GetCurrProfile and
+    * ViewUserProfile.
+    *
+    * @return the profile cache
+    */
+   public static ProfileCache getProfileCache(){
+      return _profiles;
+   }
+
+   /**
+    * Method to get the latency histograms and row counts kept for each
+    * query template.
+    *
+    * @return the query statistics
+    */
+   public static QueryStats getQueryStats(){
+      return _queries;
+   }
+
+   /**
+    * Method to get the queue of read receipts. The queue is written by a
+    * background timer and flushed with the session's connections.
+    *
+    * @return the read receipts
+    */
+   public ReadReceipts getReadReceipts(){
+      _receipts.start (this);
+      return _receipts;
+   }
+
+   /**
+    * Method to get the unread message counts kept for the main menu.
+    *
+    * @return the unread message counter
+    */
+   public UnreadCounter getUnreadCounter(){
+      return _unread;
+   }
+
+   /**
+    * Method to get the pool the session borrows its connections from.
+    *
+    * @return the connection pool
+    */
+   public ConnectionPool getPool(){
+      return this._pool;
+   }
+
+   /**
+    * Method to close the physical connections if this instance owns them.
+    * Queued read receipts are written first and the query statistics are
+    * written to standard out.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._ownsPool && this._pool != null){
+         _receipts.flush ();
+         System.out.println (this._pool.getStats ());
+         _queries.dump (System.out);
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -240,190 +759,1473 @@ public class ProfNetwork {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
-         System.err.println (
-            "Usage: " +
-            "java [-classpath <classpath>] " +
-            ProfNetwork.class.getName () +
-            " <dbname> <port> <user>");
+      if (args.length < 3) {
+         usage ();
          return;
       }//end if
+      boolean server = args.length > 3;
+      int listenPort = 0;
+      int poolSize = DEFAULT_POOL_SIZE;
+      try{
+         if (server && (args.length > 6 || !args[3].equals("-server"))){
+            throw new IllegalArgumentException ("unexpected arguments after <user>");
+         }//end if
+         if (server){
+            if (args.length < 5){
+               throw new IllegalArgumentException ("-server needs a listen port");
+            }//end if
+            listenPort = Integer.parseInt (args[4]);
+            if (args.length > 5){
+               poolSize = Integer.parseInt (args[5]);
+            }//end if
+            if (listenPort < 0 || listenPort > 65535 || poolSize < 1){
+               throw new IllegalArgumentException ("the listen port or pool size is out of range");
+            }//end if
+         }//end if
+      }catch (IllegalArgumentException e){
+         // NumberFormatException is an IllegalArgumentException too
+         System.err.println (e.getMessage ());
+         usage ();
+         return;
+      }//end try
 
-      Greeting();
       ProfNetwork esql = null;
-	  Profile prof = new Profile();
-	  Messenger menu = new Messenger();
-	  UserConnect conn = new UserConnect();
       try{
          // use postgres JDBC driver.
-         Class.forName ("org.postgresql.Driver").newInstance ();
-         // instantiate the ProfNetwork object and creates a physical
-         // connection.
+         Class.forName ("org.postgresql.Driver");
          String dbname = args[0];
          String dbport = args[1];
          String user = args[2];
+         if (server){
+            // serve many sessions from one process over a socket
+            ConnectionPool pool = connect (dbname, dbport, user, "", poolSize);
+            ProfNetwork loader = new ProfNetwork (pool, null, System.out);
+            loader.getUserDirectory ();
+            loader.getRecommender ().precomputeAll ();
+            // message upkeep runs once per server, never in the interactive clients
+            new MessagePurger (loader).start ();
+            new MessageArchiver (loader).start ();
+            new SessionServer(pool, listenPort).run();
+            return;
+         }
+         // instantiate the ProfNetwork object and creates a physical
+         // connection.
          esql = new ProfNetwork (dbname, dbport, user, "");
+         esql.getUserDirectory ();
+         esql.runSession();
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         // make sure to close the connection.
+         try{
+            if(esql != null) {
+               System.out.print("Logging off....");
+               esql.cleanup ();
+               System.out.println("Log off completed\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+      }//end try
+   }//end main
+
+   private static void usage () {
+      System.err.println (
+         "Usage: " +
+         "java [-classpath <classpath>] " +
+         ProfNetwork.class.getName () +
+         " <dbname> <port> <user> [-server <listen port> [<pool size>]]");
+   }//end usage
+
+   /**
+    * Runs the menus for one user until they exit or the input is closed.
+    */
+   public void runSession () {
+      ProfNetwork esql = this;
+      Profile prof = new Profile();
+      Messenger menu = new Messenger();
+      UserConnect conn = new UserConnect();
+      String authorisedUser = null;
+      try{
+         esql.Greeting();
+         boolean keepon = true;
+         while(keepon) {
+            // These are sample SQL statements
+            esql.out.println("MAIN MENU");
+            esql.out.println("---------");
+            esql.out.println("1. Create user");
+            esql.out.println("2. Log in");
+            // the statistics cover every session of the process and show its SQL,
+            // so only the console client that owns its pool offers them
+            if (this._ownsPool){
+               esql.out.println("8. Query statistics");
+            }//end if
+            esql.out.println("9. < EXIT");
+            authorisedUser = null;
+            int choice = esql.readChoice();
+            if (choice == 8 && !this._ownsPool){
+               choice = 0;
+            }//end if
+            switch (choice){
+               case 1: CreateUser(esql); break;
+               case 2: authorisedUser = LogIn(esql); break;
+               case 8: esql.out.println(esql.getPool().getStats()); _queries.dump(esql.out); break;
+               case 9: keepon = false; break;
+               default : esql.out.println("Unrecognized choice!"); break;
+            }//end switch
+            if (authorisedUser != null) {
+              boolean usermenu = true;
+              // the profile, unread count, requests and reach are loaded side by side,
+              // the unread count is kept current by the send and read paths after that,
+              // and counted again once it is older than UnreadCounter.REFRESH_INTERVAL
+              LoginWarmup warm = LoginWarmup.run(esql, authorisedUser);
+			  prof.GetCurrProfile(esql, authorisedUser);
+              if (warm.pendingRequests > 0){
+                 esql.out.println("\nYou have " + warm.pendingRequests + " pending connection request" + (warm.pendingRequests == 1 ? "" : "s") + ".");
+              }
+              while(usermenu) {
+                esql.out.println("\nMAIN MENU");
+                esql.out.println("---------");
+                esql.out.println("1. Profile Menu");
+                esql.out.println("2. Messages Menu (" + esql.getUnreadCounter().get(esql, authorisedUser) + " unread)");
+                esql.out.println("3. Connections Menu");
+				esql.out.println("4. Search");
+                esql.out.println(".........................");
+                esql.out.println("9. Log out\n");
+                switch (esql.readChoice()){
+                   case 1: prof.ProfileMenu(esql, authorisedUser); break;
+                   case 2: menu.MessageService(esql, authorisedUser); break;
+                   case 3: conn.ConnectMenu(esql, authorisedUser); break;
+				   case 4: conn.Search(esql, authorisedUser); break;
+                   case 9: usermenu = false; esql.getReadReceipts().flush(); esql.getUnreadCounter().forget(authorisedUser); break;
+                   default : esql.out.println("Unrecognized choice!"); break;
+                }
+              }
+            }
+         }//end while
+      }catch(SessionClosedException e) {
+         // the user went away, only their read receipts are left to write
+         esql.getReadReceipts().flush();
+         if (authorisedUser != null){
+            esql.getUnreadCounter().forget(authorisedUser);
+         }//end if
+      }
+   }//end runSession
+
+   public void Greeting(){
+      this.out.println(
+         "\n\n*******************************************************\n" +
+         "              User Interface      	               \n" +
+         "*******************************************************\n");
+   }//end Greeting
+
+   /*
+    * Reads the users choice given from the keyboard
+    * @int
+    **/
+   public int readChoice() {
+      int input;
+      // returns only if a correct value is given.
+      do {
+         this.out.print("Please make your choice: ");
+         String line = null;
+         try { // read the integer, parse it and break.
+            line = this.in.readLine();
+         }catch (Exception e) {
+            line = null;
+         }//end try
+         if (line == null || this._closed){
+            this._closed = true;
+            throw new SessionClosedException();
+         }
+         try {
+            input = Integer.parseInt(line);
+			this.out.println();
+            break;
+         }catch (Exception e) {
+            this.out.println("Your input is invalid!");
+            continue;
+         }//end try
+      }while (true);
+      return input;
+   }//end readChoice
+
+   /*
+    * Reads a password, without echo when the session is on a console
+    * @String
+    **/
+   public String readPassword() throws IOException {
+      if (this.out == System.out && System.console() != null){
+         return new String(System.console().readPassword());
+      }
+      return this.in.readLine();
+   }//end readPassword
+
+   /*
+    * Creates a new user with privided login, passowrd and phoneNum
+    * An empty block and contact list would be generated and associated with a user
+    **/
+   // need to add additional options for other details although these are not required
+   public static void CreateUser(ProfNetwork esql){
+      try{
+         esql.out.print("\tEnter user login: ");
+         String login = esql.in.readLine();
+         esql.out.print("\tEnter user password: ");
+		 String password = esql.readPassword();
+         esql.out.print("\tEnter user email: ");
+         String email = esql.in.readLine();
+
+	 //Creating empty contact\block lists for a user
+	 String query = "INSERT INTO USR (userId, password, email) VALUES (?, ?, ?)";
+
+         esql.executeUpdate(query, login, password, email);
+         esql.getUserDirectory().add(login, null);
+         esql.out.println ("User successfully created!");
+      }catch(Exception e){
+         //System.err.println (e.getMessage ());
+		 String error = e.getMessage();
+		 if(error != null && error.toLowerCase().contains("duplicate")){
+			 esql.out.print("\t\nERROR: User login already exists. Please try again.\n");
+		 }
+      }
+   }//end
+
+   /*
+    * Check log in credentials for an existing user
+    * @return User login or null is the user does not exist
+    **/
+   public static String LogIn(ProfNetwork esql){
+      try{
+         esql.out.print("\tEnter user login: ");
+         String login = esql.in.readLine();
+         esql.out.print("\tEnter user password: ");
+		 String password = esql.readPassword();
+
+         String query = "SELECT * FROM USR WHERE userId = ? AND password = ?";
+         int userNum = esql.executeQuery(query, login, password);
+	 if (userNum > 0){
+		return login;
+	 }
+	 else
+	 {
+		esql.out.println("\t\nThe credentials provided were not valid. Please try again.\n");
+	 }
+         return null;
+      }catch(Exception e){
+         System.err.println (e.getMessage ());
+         return null;
+      }
+   }//end
+
+}//end ProfNetwork
+
+/********************************************************
+* QueryStats Class
+* Purpose: Keeps a latency histogram, the number of calls,
+*		   failures and rows for every query template run
+*		   through the ProfNetwork execute methods. Literal
+*		   strings and numbers are replaced by ? so queries
+*		   built with String.format share one template.
+*		   Queries slower than the threshold are written to
+*		   the slow query log as they finish.
+*
+********************************************************/
+class QueryStats{
+	public static final long DEFAULT_SLOW_MILLIS = 250;
+	// the row count recorded for a query that threw
+	public static final int FAILED = -1;
+	// templates kept apart, any more are counted together
+	public static final int MAX_TEMPLATES = 1000;
+	private static final String OTHER = "(other queries)";
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+	private final long slowNanos;
+	private final PrintStream slowLog;
+	// the exact sql text seen, so a template is only normalized once
+	private final ConcurrentHashMap<String, Template> bySql = new ConcurrentHashMap<String, Template>();
+	private final ConcurrentHashMap<String, Template> byTemplate = new ConcurrentHashMap<String, Template>();
+
+	public QueryStats(long slowMillis, PrintStream slowLog){
+		this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+		this.slowLog = slowLog;
+	}
+
+	/*********************************************
+	* Method Name: record
+	* Purpose: Adds one finished query to the
+	* histogram of its template and logs it when
+	* it was slow
+	*
+	* Input: String sql, long nanos, int rows or
+	* FAILED
+	*
+	* Output: None
+	*
+	**********************************************/
+	public void record(String sql, long nanos, int rows){
+		Template template = bySql.get(sql);
+		if(template == null){
+			template = template(normalize(sql));
+			if(bySql.size() < MAX_TEMPLATES * 4){
+				bySql.put(sql, template);
+			}
+		}
+		template.record(nanos, rows);
+		if(nanos >= slowNanos){
+			slowLog.println(String.format("%tF %<tT slow query %.1f ms %s: %s", new Date(),
+				nanos / 1e6, rows == FAILED ? "failed" : "rows=" + rows, template.text));
+		}
+	}
+
+	/* the query with its literals replaced by ? and its whitespace collapsed */
+	public static String normalize(String sql){
+		String text = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+		text = STRING.matcher(text).replaceAll("?");
+		text = NUMBER.matcher(text).replaceAll("?");
+		return LIST.matcher(text).replaceAll("?");
+	}
+
+	private Template template(String text){
+		Template template = byTemplate.get(text);
+		if(template == null){
+			if(byTemplate.size() >= MAX_TEMPLATES){
+				text = OTHER;
+			}
+			Template made = new Template(text);
+			template = byTemplate.putIfAbsent(text, made);
+			if(template == null){
+				template = made;
+			}
+		}
+		return template;
+	}
+
+	/* writes one line per template, the most total time first */
+	public void dump(PrintStream out){
+		List<Template> templates = new ArrayList<Template>(byTemplate.values());
+		Collections.sort(templates, new Comparator<Template>(){
+			public int compare(Template a, Template b){
+				return Long.compare(b.histogram.getTotal(), a.histogram.getTotal());
+			}
+		});
+		out.println(String.format("%8s %6s %9s %9s %9s %9s %9s %11s  %s",
+			"calls", "failed", "rows/call", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms", "query"));
+		for(Template t : templates){
+			long calls = t.histogram.getCount();
+			if(calls == 0){
+				continue;
+			}
+			long ok = calls - t.failed.get();
+			out.println(String.format("%8d %6d %9.1f %9.2f %9.2f %9.2f %9.2f %11.1f  %s",
+				calls, t.failed.get(), ok == 0 ? 0.0 : (double) t.rows.get() / ok,
+				t.histogram.percentile(50) / 1e3, t.histogram.percentile(90) / 1e3, t.histogram.percentile(99) / 1e3,
+				t.histogram.getMax() / 1e3, t.histogram.getTotal() / 1e3, t.text));
+		}
+		out.println();
+	}
+
+	private static class Template{
+		final String text;
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final AtomicLong rows = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+
+		Template(String text){
+			this.text = text;
+		}
+
+		void record(long nanos, int count){
+			histogram.record(nanos / 1000);
+			if(count == FAILED){
+				failed.incrementAndGet();
+			} else {
+				rows.addAndGet(count);
+			}
+		}
+	}
+} // end QueryStats
+
+/********************************************************
+* LatencyHistogram Class
+* Purpose: Counts latencies in microseconds in log-linear
+*		   buckets, the way HdrHistogram does. Every power
+*		   of two is split into SUB_BUCKETS equal buckets,
+*		   so a percentile is off by at most 1/SUB_BUCKETS
+*		   of its value while the whole histogram is a
+*		   fixed array of counters that threads add to
+*		   without locking.
+*
+********************************************************/
+class LatencyHistogram{
+	public static final int SUB_BUCKETS = 32;
+	// powers of two above SUB_BUCKETS, enough for about 19 hours
+	private static final int MAGNITUDES = 31;
+
+	private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS * (MAGNITUDES + 1));
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long micros){
+		long value = Math.max(0, micros);
+		counts.incrementAndGet(Math.min(index(value), counts.length() - 1));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current;
+		while(value > (current = max.get()) && !max.compareAndSet(current, value)){
+			// another thread raised the max, check against its value
+		}
+	}
+
+	/* the bucket of a value, values below SUB_BUCKETS have one each */
+	static int index(long value){
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - 6;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+	}
+
+	/* the middle of the values counted in a bucket */
+	static long value(int index){
+		if(index < SUB_BUCKETS){
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long low = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return low + ((1L << shift) - 1) / 2;
+	}
+
+	/* the latency in microseconds that p percent of the calls were under */
+	public long percentile(double p){
+		long n = count.get();
+		if(n == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+		long seen = 0;
+		for(int i = 0; i < counts.length(); i++){
+			seen += counts.get(i);
+			if(seen >= rank){
+				return Math.min(value(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount(){
+		return count.get();
+	}
+
+	public long getTotal(){
+		return total.get();
+	}
+
+	public long getMax(){
+		return max.get();
+	}
+} // end LatencyHistogram
+
+/********************************************************
+* StatementCache Class
+* Purpose: Keeps the prepared statements of a connection
+*		   keyed by their SQL text so each query is only
+*		   parsed and planned once. The least recently
+*		   used statement is closed when the cache is full.
+*
+********************************************************/
+class StatementCache{
+	public static final int DEFAULT_CAPACITY = 64;
+
+	// counted over every connection, reported by getStats
+	private static final AtomicLong allHits = new AtomicLong();
+	private static final AtomicLong allMisses = new AtomicLong();
+	private static final AtomicLong serverPrepared = new AtomicLong();
+
+	private final Connection connection;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	private long hits = 0;
+	private long misses = 0;
+
+	public StatementCache(Connection connection, final int capacity){
+		this.connection = connection;
+		// access ordered so the eldest entry is the least recently used one
+		this.statements = new LinkedHashMap<String, PreparedStatement>(capacity, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+				if(size() > capacity){
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/*********************************************
+	* Method Name: prepare
+	* Purpose: Returns the cached statement for the
+	* sql, preparing it on a miss, with the params
+	* bound in order
+	*
+	* Input: String sql, Object params
+	*
+	* Output: PreparedStatement object
+	*
+	**********************************************/
+	public synchronized PreparedStatement prepare(String sql, Object... params) throws SQLException{
+		PreparedStatement stmt = statements.get(sql);
+		if(stmt == null){
+			misses++;
+			allMisses.incrementAndGet();
+			stmt = connection.prepareStatement(sql);
+			useServerPrepare(stmt);
+			statements.put(sql, stmt);
+		} else {
+			hits++;
+			allHits.incrementAndGet();
+			stmt.clearParameters();
+		}
+		for(int i = 0; i < params.length; i++){
+			if(params[i] == null){
+				stmt.setNull(i + 1, Types.VARCHAR);
+			} else {
+				stmt.setObject(i + 1, params[i]);
+			}
+		}
+		return stmt;
+	}
+
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	/*
+	 * The postgres drivers fill the parameters in on the client and send
+	 * the whole text unless told otherwise. With server prepare on, the
+	 * server parses and plans the statement once and later runs only bind
+	 * the parameters. Found through reflection so the code also compiles
+	 * and runs without the driver on the classpath.
+	 **/
+	private static void useServerPrepare(PreparedStatement stmt){
+		try{
+			Class<?> pgStatement = Class.forName("org.postgresql.PGStatement");
+			if(pgStatement.isInstance(stmt)){
+				pgStatement.getMethod("setUseServerPrepare", boolean.class).invoke(stmt, true);
+				serverPrepared.incrementAndGet();
+			}
+		} catch (Exception e){
+			// another driver, or one without server prepare, the statement is still usable
+		}
+	}
+
+	/* one line summary of the statement counters of every connection */
+	public static String getStats(){
+		long hit = allHits.get();
+		long lookups = hit + allMisses.get();
+		return String.format("statements: lookups=%d reused=%d (%.1f%%) prepared=%d serverPrepared=%d",
+			lookups, hit, lookups == 0 ? 0 : 100.0 * hit / lookups, allMisses.get(), serverPrepared.get());
+	}
+
+	/* closes every cached statement */
+	public synchronized void close(){
+		for(PreparedStatement stmt : statements.values()){
+			closeQuietly(stmt);
+		}
+		statements.clear();
+	}
+
+	private static void closeQuietly(PreparedStatement stmt){
+		try{
+			stmt.close();
+		} catch (SQLException e){
+			// ignored.
+		}
+	}
+} // end StatementCache
+
+/********************************************************
+* ConnectionPool Class
+* Purpose: Bounded pool of database connections shared
+*		   by the sessions of one process. Connections
+*		   that sat idle are checked before they are
+*		   handed out, connections idle for too long
+*		   are closed, and a borrower waits at most
+*		   maxWait ms for a free connection.
+*
+********************************************************/
+class ConnectionPool{
+	// connections idle for longer than this are checked with a query before use
+	public static final long VALIDATE_AFTER = 30000;
+
+	private final String url;
+	private final String user;
+	private final String passwd;
+	private final int maxSize;
+	private final long maxWait;
+	private final long idleTimeout;
+
+	// most recently released connection first
+	private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+	private final Timer evictor;
+	// a lock rather than synchronized so waiting virtual threads do not pin their carrier
+	private final ReentrantLock lock = new ReentrantLock();
+	// one condition per waiting borrower, oldest first
+	private final LinkedList<Condition> waiters = new LinkedList<Condition>();
+	private int open = 0;
+	private boolean closed = false;
+
+	// counters reported by getStats
+	private long borrows = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long waits = 0;
+	private long waitMillis = 0;
+	private long timeouts = 0;
+	private long invalid = 0;
+	private long evicted = 0;
+
+	public ConnectionPool(String url, String user, String passwd, int maxSize, long maxWait, long idleTimeout){
+		this.url = url;
+		this.user = user;
+		this.passwd = passwd;
+		this.maxSize = maxSize;
+		this.maxWait = maxWait;
+		this.idleTimeout = idleTimeout;
+		this.evictor = new Timer("pool-evictor", true);
+		long period = Math.max(1000, idleTimeout / 2);
+		this.evictor.schedule(new TimerTask(){
+			public void run(){
+				evictIdle();
+			}
+		}, period, period);
+	}
+
+	/*********************************************
+	* Method Name: borrow
+	* Purpose: Hands out an idle connection, opens
+	* a new one while under maxSize, or waits for
+	* one to be released
+	*
+	* Input: None
+	*
+	* Output: PooledConnection object
+	*
+	**********************************************/
+	public PooledConnection borrow() throws SQLException{
+		long start = System.currentTimeMillis();
+		boolean waited = false;
+		Condition turn = null;
+		while(true){
+			PooledConnection conn = null;
+			lock.lock();
+			try{
+				if(closed){
+					leave(turn);
+					throw new SQLException("Connection pool is closed");
+				}
+				// waiters are served in arrival order, a new borrower cannot jump ahead of them
+				boolean first = waiters.isEmpty() || waiters.getFirst() == turn;
+				if(first && !idle.isEmpty()){
+					conn = idle.removeFirst();
+				} else if(first && open < maxSize){
+					open++;
+				} else {
+					long remaining = maxWait - (System.currentTimeMillis() - start);
+					if(remaining <= 0){
+						timeouts++;
+						leave(turn);
+						throw new SQLException("Timed out after " + maxWait + " ms waiting for a database connection");
+					}
+					if(turn == null){
+						turn = lock.newCondition();
+						waiters.addLast(turn);
+					}
+					waited = true;
+					try{
+						turn.await(remaining, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e){
+						leave(turn);
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection");
+					}
+					continue;
+				}
+				leave(turn);
+				turn = null;
+			} finally {
+				lock.unlock();
+			}
+			if(conn == null){
+				// a slot was reserved above, open the connection outside the lock
+				try{
+					conn = new PooledConnection(DriverManager.getConnection(url, user, passwd));
+				} catch (SQLException e){
+					lock.lock();
+					try{
+						open--;
+						signalNext();
+					} finally {
+						lock.unlock();
+					}
+					throw e;
+				}
+				record(start, waited, false);
+				return conn;
+			}
+			if(!conn.validate(VALIDATE_AFTER)){
+				lock.lock();
+				try{
+					open--;
+					invalid++;
+					signalNext();
+				} finally {
+					lock.unlock();
+				}
+				conn.close();
+				continue;
+			}
+			record(start, waited, true);
+			return conn;
+		}
+	}
+
+	/* returns a borrowed connection to the pool */
+	public void release(PooledConnection conn){
+		lock.lock();
+		try{
+			if(!closed){
+				conn.lastUsed = System.currentTimeMillis();
+				idle.addFirst(conn);
+				signalNext();
+				return;
+			}
+			open--;
+		} finally {
+			lock.unlock();
+		}
+		conn.close();
+	}
+
+	/* closes the connections that have been idle longer than idleTimeout */
+	public void evictIdle(){
+		List<PooledConnection> expired = new ArrayList<PooledConnection>();
+		lock.lock();
+		try{
+			long cutoff = System.currentTimeMillis() - idleTimeout;
+			// the least recently used connections are at the end of the list
+			while(!idle.isEmpty() && idle.getLast().lastUsed < cutoff){
+				expired.add(idle.removeLast());
+				open--;
+				evicted++;
+			}
+		} finally {
+			lock.unlock();
+		}
+		for(PooledConnection conn : expired){
+			conn.close();
+		}
+	}
+
+	/* closes every idle connection, borrowed ones are closed when released */
+	public void close(){
+		List<PooledConnection> remaining;
+		lock.lock();
+		try{
+			closed = true;
+			evictor.cancel();
+			remaining = new ArrayList<PooledConnection>(idle);
+			open -= idle.size();
+			idle.clear();
+			for(Condition waiter : waiters){
+				waiter.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		for(PooledConnection conn : remaining){
+			conn.close();
+		}
+	}
+
+	/* one line summary of the pool counters, used to size the pool */
+	public String getStats(){
+		lock.lock();
+		try{
+			double hitRate = borrows == 0 ? 0 : 100.0 * hits / borrows;
+			double avgWait = waits == 0 ? 0 : (double) waitMillis / waits;
+			return String.format("pool: open=%d/%d idle=%d borrows=%d hits=%d (%.1f%%) opened=%d waits=%d avgWaitMs=%.1f timeouts=%d invalid=%d evicted=%d",
+				open, maxSize, idle.size(), borrows, hits, hitRate, misses, waits, avgWait, timeouts, invalid, evicted)
+				+ " " + StatementCache.getStats();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* wakes the oldest waiter when there is something for it to take, lock must be held */
+	private void signalNext(){
+		if(!waiters.isEmpty() && (!idle.isEmpty() || open < maxSize)){
+			waiters.getFirst().signal();
+		}
+	}
+
+	/* removes a borrower from the wait queue, lock must be held */
+	private void leave(Condition turn){
+		if(turn == null){
+			return;
+		}
+		boolean first = waiters.getFirst() == turn;
+		waiters.remove(turn);
+		if(first){
+			signalNext();
+		}
+	}
+
+	private void record(long start, boolean waited, boolean hit){
+		lock.lock();
+		try{
+			borrows++;
+			if(hit){
+				hits++;
+			} else {
+				misses++;
+			}
+			if(waited){
+				waits++;
+				waitMillis += System.currentTimeMillis() - start;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+} // end ConnectionPool
+
+/********************************************************
+* PooledConnection Class
+* Purpose: A physical connection of the pool along with
+*		   its prepared statement cache.
+*
+********************************************************/
+class PooledConnection{
+	public final Connection connection;
+	public final StatementCache statements;
+	long lastUsed;
+	private boolean suspect = false;
+
+	public PooledConnection(Connection connection){
+		this.connection = connection;
+		this.statements = new StatementCache(connection, StatementCache.DEFAULT_CAPACITY);
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/* marks the connection to be checked before it is used again, called after an error */
+	public void suspect(){
+		this.suspect = true;
+	}
+
+	/* runs a statement that returns no rows, such as BEGIN or COMMIT */
+	public void run(String sql) throws SQLException{
+		Statement stmt = connection.createStatement();
+		try{
+			stmt.execute(sql);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/* runs a trivial query if the connection is suspect or has been idle for a while */
+	public boolean validate(long idleLimit){
+		if(!suspect && System.currentTimeMillis() - lastUsed < idleLimit){
+			return true;
+		}
+		try{
+			Statement stmt = connection.createStatement();
+			stmt.executeQuery("SELECT 1").close();
+			stmt.close();
+			suspect = false;
+			return true;
+		} catch (SQLException e){
+			return false;
+		}
+	}
+
+	public void close(){
+		statements.close();
+		try{
+			connection.close();
+		} catch (SQLException e){
+			// ignored.
+		}
+	}
+} // end PooledConnection
+
+/********************************************************
+* SessionServer Class
+* Purpose: Serves many users from one process. Every
+*		   socket connection gets its own session running
+*		   the normal menus, and all sessions share one
+*		   connection pool.
+*
+********************************************************/
+class SessionServer{
+	// how often the pool counters are written to the log
+	public static final long STATS_INTERVAL = 60000;
+	// pending socket connections, large enough for a burst of logins
+	public static final int BACKLOG = 1024;
+
+	private final ConnectionPool pool;
+	private final int port;
+	private final ExecutorService sessions = ProfNetwork.newSessionExecutor();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong served = new AtomicLong();
+
+	public SessionServer(ConnectionPool pool, int port){
+		this.pool = pool;
+		this.port = port;
+	}
+
+	/* accepts sessions until the process is stopped */
+	public void run() throws IOException{
+		ServerSocket server = new ServerSocket(port, BACKLOG, InetAddress.getByName("localhost"));
+		Timer stats = new Timer("pool-stats", true);
+		stats.schedule(new TimerTask(){
+			public void run(){
+				System.out.println(getStats());
+			}
+		}, STATS_INTERVAL, STATS_INTERVAL);
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){
+				System.out.println(getStats());
+				new ProfNetwork(pool, null, System.out).getReadReceipts().flush();
+				ProfNetwork.getQueryStats().dump(System.out);
+				pool.close();
+			}
+		});
+		System.out.println("Serving sessions on port " + port);
+		while(true){
+			final Socket socket = server.accept();
+			sessions.execute(new Runnable(){
+				public void run(){
+					serve(socket);
+				}
+			});
+		}
+	}
+
+	public String getStats(){
+		return "sessions: active=" + active.get() + " served=" + served.get() + " " + pool.getStats()
+			+ " " + ProfNetwork.getProfileCache().getStats();
+	}
+
+	private void serve(Socket socket){
+		active.incrementAndGet();
+		try{
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			PrintStream out = new PrintStream(socket.getOutputStream(), true);
+			new ProfNetwork(pool, in, out).runSession();
+		} catch (IOException e){
+			System.err.println(e.getMessage());
+		} finally {
+			active.decrementAndGet();
+			served.incrementAndGet();
+			try{
+				socket.close();
+			} catch (IOException e){
+				// ignored.
+			}
+		}
+	}
+} // end SessionServer
+
+/* thrown by readChoice once the session input has been closed */
+class SessionClosedException extends RuntimeException{
+	private static final long serialVersionUID = 1L;
+}
+
+/********************************************************
+* UserDirectory Class
+* Purpose: Sorted in memory index of every userId and
+*		   name so typed user ids can be checked and
+*		   completed without a query. Each user has an
+*		   entry for its lower case id and one for its
+*		   lower case name, both written as key, a 0 char
+*		   and the userId, in one sorted array.
+*
+********************************************************/
+class UserDirectory{
+	private static final char SEPARATOR = '\0';
+
+	private String[] entries = new String[0];
+	private int size = 0;
+
+	/*********************************************
+	* Method Name: load
+	* Purpose: Builds the directory from every row
+	* of usr, sorting the entries once
+	*
+	* Input: ProfNetwork object
+	*
+	* Output: UserDirectory object
+	*
+	**********************************************/
+	public static UserDirectory load(ProfNetwork esql) throws SQLException{
+		final List<String> loaded = new ArrayList<String>();
+		esql.executeQueryAndStream("SELECT userid, name FROM usr", new RowHandler(){
+			public void row(ResultSet rs) throws SQLException{
+				String userId = rs.getString(1).trim();
+				String name = rs.getString(2);
+				loaded.add(entry(userId, userId));
+				if(name != null){
+					loaded.add(entry(name.trim(), userId));
+				}
+			}
+		});
+		UserDirectory directory = new UserDirectory();
+		directory.entries = loaded.toArray(new String[loaded.size()]);
+		directory.size = directory.entries.length;
+		Arrays.sort(directory.entries);
+		return directory;
+	}
+
+	/* adds a new user, the name may be null */
+	public synchronized void add(String userId, String name){
+		insert(entry(userId, userId));
+		if(name != null){
+			insert(entry(name, userId));
+		}
+	}
+
+	/* true when the user exists, answered from memory only */
+	public synchronized boolean contains(String userId){
+		return Arrays.binarySearch(entries, 0, size, entry(userId, userId)) >= 0;
+	}
+
+	/* up to limit user ids whose id or name starts with the prefix, ignoring case */
+	public synchronized List<String> suggest(String prefix, int limit){
+		List<String> result = new ArrayList<String>();
+		String key = prefix.trim().toLowerCase();
+		int i = lowerBound(key);
+		while(i < size && result.size() < limit && entries[i].startsWith(key)){
+			String userId = entries[i].substring(entries[i].indexOf(SEPARATOR) + 1);
+			if(!result.contains(userId)){
+				result.add(userId);
+			}
+			i++;
+		}
+		return result;
+	}
+
+	private static String entry(String key, String userId){
+		return key.toLowerCase() + SEPARATOR + userId;
+	}
+
+	private void insert(String entry){
+		int i = Arrays.binarySearch(entries, 0, size, entry);
+		if(i >= 0){
+			return;
+		}
+		i = -i - 1;
+		if(size == entries.length){
+			entries = Arrays.copyOf(entries, Math.max(16, size * 2));
+		}
+		System.arraycopy(entries, i, entries, i + 1, size - i);
+		entries[i] = entry;
+		size++;
+	}
+
+	/* index of the first entry not below the key */
+	private int lowerBound(String key){
+		int i = Arrays.binarySearch(entries, 0, size, key);
+		return i >= 0 ? i : -i - 1;
+	}
+} // end UserDirectory
+
+/********************************************************
+* ProfileCache Class
+* Purpose: Keeps the most recently shown profiles so a
+*		   profile viewed again is printed without going
+*		   to the database. Entries are dropped when the
+*		   user edits their profile, when they are older
+*		   than the ttl (changes made by other processes
+*		   show up after at most that long) and when the
+*		   cache is full, least recently used first.
+*
+********************************************************/
+class ProfileCache{
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final long DEFAULT_TTL = 60000;
+
+	private final long ttl;
+	private final LinkedHashMap<String, Cached> profiles;
+	private long hits = 0;
+	private long misses = 0;
+	private long expired = 0;
+	private long evicted = 0;
+	private long invalidated = 0;
+
+	// when each user's profile was last changed, so a load that raced an edit is not cached
+	private final Map<String, Long> lastInvalidation = new HashMap<String, Long>();
+
+	public ProfileCache(final int capacity, long ttl){
+		this.ttl = ttl;
+		// access ordered so the eldest entry is the least recently used one
+		this.profiles = new LinkedHashMap<String, Cached>(capacity, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest){
+				if(size() > capacity){
+					evicted++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/*********************************************
+	* Method Name: get
+	* Purpose: Returns the cached profile of the user,
+	* loading it on a miss. The load runs outside the
+	* lock so one slow query does not hold up other
+	* sessions.
+	*
+	* Input: ProfNetwork object, String userId
+	*
+	* Output: UserProfile object
+	*
+	**********************************************/
+	public UserProfile get(ProfNetwork esql, String userId) throws SQLException{
+		long now = System.currentTimeMillis();
+		Cached entry;
+		synchronized(this){
+			entry = profiles.get(userId);
+			if(entry != null && now - entry.loaded < ttl){
+				hits++;
+				return entry.profile;
+			}
+			if(entry != null){
+				expired++;
+				profiles.remove(userId);
+			}
+			misses++;
+		}
+		entry = new Cached(UserProfile.load(esql, userId), now);
+		synchronized(this){
+			// an edit made while loading must not be hidden by the older copy
+			if(entry.loaded >= invalidatedAt(userId)){
+				profiles.put(userId, entry);
+			}
+		}
+		return entry.profile;
+	}
+
+	/* drops the cached profile of a user after it was changed */
+	public synchronized void invalidate(String userId){
+		if(profiles.remove(userId) != null){
+			invalidated++;
+		}
+		lastInvalidation.put(userId, System.currentTimeMillis());
+		if(lastInvalidation.size() > profiles.size() + DEFAULT_CAPACITY){
+			lastInvalidation.clear();
+		}
+	}
+
+	public synchronized String getStats(){
+		long lookups = hits + misses;
+		double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+		return String.format("profiles: cached=%d hits=%d (%.1f%%) misses=%d expired=%d evicted=%d invalidated=%d",
+			profiles.size(), hits, hitRate, misses, expired, evicted, invalidated);
+	}
+
+	private long invalidatedAt(String userId){
+		Long at = lastInvalidation.get(userId);
+		return at == null ? 0 : at;
+	}
+
+	private static class Cached{
+		final UserProfile profile;
+		final long loaded;
+
+		Cached(UserProfile profile, long loaded){
+			this.profile = profile;
+			this.loaded = loaded;
+		}
+	}
+} // end ProfileCache
+
+/********************************************************
+* UnreadCounter Class
+* Purpose: Keeps the number of unread messages of each
+*		   logged in user so the main menu can show it
+*		   without a query. The count is taken from the
+*		   database at login and then moved up and down
+*		   by the send, read and delete paths of this
+*		   process. Messages sent by other processes are
+*		   not seen by those paths, so a count older than
+*		   REFRESH_INTERVAL is taken again when it is
+*		   shown. A user's count is dropped at logout.
+*
+********************************************************/
+class UnreadCounter{
+	// how long a count is shown before it is taken from the database again
+	public static final long REFRESH_INTERVAL = 60000;
+
+	private final ConcurrentHashMap<String, Count> counts = new ConcurrentHashMap<String, Count>();
+
+	/* counts the unread messages of the user in the database */
+	public void refresh(ProfNetwork esql, String userId){
+		try{
+			List<List<String>> result = esql.executeQueryAndReturnResult("SELECT count(*) FROM message WHERE receiverid = ? AND status = 'Delivered' AND (delete_status = 0 OR delete_status = 1)", userId);
+			Count count = counts.get(userId);
+			if(count == null){
+				Count fresh = new Count();
+				count = counts.putIfAbsent(userId, fresh);
+				if(count == null){
+					count = fresh;
+				}
+			}
+			// set in place, so paths holding the counter keep moving the one that is shown
+			count.value.set(Integer.parseInt(result.get(0).get(0).trim()));
+			count.counted = System.currentTimeMillis();
+		} catch (SQLException e){
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/* the unread count of the user, counted again when it is missing or older than REFRESH_INTERVAL */
+	public int get(ProfNetwork esql, String userId){
+		Count count = counts.get(userId);
+		if(count == null || System.currentTimeMillis() - count.counted > REFRESH_INTERVAL){
+			refresh(esql, userId);
+			count = counts.get(userId);
+		}
+		return count == null ? 0 : count.value.get();
+	}
+
+	/* a new message was sent to the user */
+	public void delivered(String userId){
+		Count count = counts.get(userId);
+		if(count != null){
+			count.value.incrementAndGet();
+		}
+	}
+
+	/* an unread message of the user was read or deleted */
+	public void read(String userId){
+		Count count = counts.get(userId);
+		if(count != null){
+			int current;
+			do{
+				current = count.value.get();
+			} while(current > 0 && !count.value.compareAndSet(current, current - 1));
+		}
+	}
+
+	/* the user logged out, the count is taken again at the next login */
+	public void forget(String userId){
+		counts.remove(userId);
+	}
+
+	/* one user's count and when it was taken from the database */
+	private static class Count{
+		final AtomicInteger value = new AtomicInteger();
+		volatile long counted;
+	}
+} // end UnreadCounter
+
+/********************************************************
+* ReadReceipts Class
+* Purpose: Collects the ids of messages a user opened and
+*		   marks them Read a batch at a time, with one
+*		   UPDATE for the whole batch. A batch is written
+*		   when it reaches batchSize, every flushInterval
+*		   milliseconds, when a user logs out and when the
+*		   program exits.
+*
+********************************************************/
+class ReadReceipts{
+	public static final int BATCH_SIZE = 100;
+	public static final long FLUSH_INTERVAL = 2000;
 
-         boolean keepon = true;
-         while(keepon) {
-            // These are sample SQL statements
-            System.out.println("MAIN MENU");
-            System.out.println("---------");
-            System.out.println("1. Create user");
-            System.out.println("2. Log in");
-            System.out.println("9. < EXIT");
-            String authorisedUser = null;
-            switch (readChoice()){
-               case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
-               case 9: keepon = false; break;
-               default : System.out.println("Unrecognized choice!"); break;
-            }//end switch
-            if (authorisedUser != null) {
-              boolean usermenu = true;
-			  prof.GetCurrProfile(esql, authorisedUser);
-              while(usermenu) {
-                System.out.println("\nMAIN MENU");
-                System.out.println("---------");
-                System.out.println("1. Profile Menu");
-                System.out.println("2. Messages Menu");
-                System.out.println("3. Connections Menu");
-				System.out.println("4. Search");
-                System.out.println(".........................");
-                System.out.println("9. Log out\n");
-                switch (readChoice()){
-                   case 1: prof.ProfileMenu(esql, authorisedUser); break;
-                   case 2: menu.MessageService(esql, authorisedUser); break;
-                   case 3: conn.ConnectMenu(esql, authorisedUser); break;
-				   case 4: conn.Search(esql, authorisedUser); break;
-                   case 9: usermenu = false; 
-						   TableCleanup(esql, authorisedUser); break;
-                   default : System.out.println("Unrecognized choice!"); break;
-                }
-              }
-            }
-         }//end while
-      }catch(Exception e) {
-         System.err.println (e.getMessage ());
-      }finally{
-         // make sure to cleanup the created table and close the connection.
-         try{
-            if(esql != null) {
-               System.out.print("Logging off....");
-               esql.cleanup ();
-               System.out.println("Log off completed\n\nBye !");
-            }//end if
-         }catch (Exception e) {
-            // ignored.
-         }//end try
-      }//end try
-   }//end main
+	private final int batchSize;
+	private final long flushInterval;
+	// ids stay here until their update committed, so a receipt is only counted once
+	private final Set<Integer> queued = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	private final ReentrantLock flushing = new ReentrantLock();
+	private ProfNetwork writer = null;
+	private Timer timer = null;
 
-   public static void Greeting(){
-      System.out.println(
-         "\n\n*******************************************************\n" +
-         "              User Interface      	               \n" +
-         "*******************************************************\n");
-   }//end Greeting
+	public ReadReceipts(int batchSize, long flushInterval){
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+	}
 
-   /*
-    * Reads the users choice given from the keyboard
-    * @int
-    **/
-   public static int readChoice() {
-      int input;
-      // returns only if a correct value is given.
-      do {
-         System.out.print("Please make your choice: ");
-         try { // read the integer, parse it and break.
-            input = Integer.parseInt(in.readLine());
-			System.out.println();
-            break;
-         }catch (Exception e) {
-            System.out.println("Your input is invalid!");
-            continue;
-         }//end try
-      }while (true);
-      return input;
-   }//end readChoice
+	/* starts the flush timer on the pool of the first session, later calls do nothing */
+	public synchronized void start(ProfNetwork esql){
+		if(timer != null){
+			return;
+		}
+		writer = new ProfNetwork(esql.getPool(), null, System.out);
+		timer = new Timer("read-receipts", true);
+		timer.schedule(new TimerTask(){
+			public void run(){
+				flush();
+			}
+		}, flushInterval, flushInterval);
+	}
 
-   /*
-    * Creates a new user with privided login, passowrd and phoneNum
-    * An empty block and contact list would be generated and associated with a user
-    **/
-   // need to add additional options for other details although these are not required
-   public static void CreateUser(ProfNetwork esql){
-      try{
-         System.out.print("\tEnter user login: ");
-         String login = in.readLine();
-         System.out.print("\tEnter user password: ");
-         char[] passwordChars = System.console().readPassword();
-		 String password = new String(passwordChars);
-         System.out.print("\tEnter user email: ");
-         String email = in.readLine();
+	/*********************************************
+	* Method Name: queue
+	* Purpose: Adds a receipt for the message and
+	* writes the batch once it is full
+	*
+	* Input: int msgid
+	*
+	* Output: true if the message was not queued
+	* already, so the caller takes it off the
+	* unread count
+	*
+	**********************************************/
+	public boolean queue(int msgid){
+		boolean added = queued.add(msgid);
+		if(added && queued.size() >= batchSize){
+			flush();
+		}
+		return added;
+	}
 
-	 //Creating empty contact\block lists for a user
-	 String query = String.format("INSERT INTO USR (userId, password, email) VALUES ('%s','%s','%s')", login, password, email);
+	public boolean isQueued(int msgid){
+		return queued.contains(msgid);
+	}
 
-         esql.executeUpdate(query);
-         System.out.println ("User successfully created!");
-      }catch(Exception e){
-         //System.err.println (e.getMessage ());
-		 String error = e.getMessage();
-		 if(error.toLowerCase().contains("duplicate")){
-			 System.out.print("\t\nERROR: User login already exists. Please try again.\n");
-		 }
-      }
-   }//end
+	/*********************************************
+	* Method Name: flush
+	* Purpose: Marks every queued message Read with
+	* one UPDATE. When the update fails the ids stay
+	* queued and are tried again by the next flush.
+	*
+	* Input: None
+	*
+	* Output: number of messages marked Read
+	*
+	**********************************************/
+	public int flush(){
+		if(queued.isEmpty() || writer == null){
+			return 0;
+		}
+		flushing.lock();
+		try{
+			List<Integer> ids = new ArrayList<Integer>(queued);
+			if(ids.isEmpty()){
+				return 0;
+			}
+			StringBuilder array = new StringBuilder("{");
+			for(int i = 0; i < ids.size(); i++){
+				array.append(i == 0 ? "" : ",").append(ids.get(i));
+			}
+			// the array is sent as text so drivers without setArray can bind it
+			int marked = writer.executeUpdate("UPDATE message SET status = 'Read' WHERE msgid = ANY (CAST(? AS integer[])) AND status = 'Delivered'",
+				array.append("}").toString());
+			queued.removeAll(ids);
+			return marked;
+		} catch (SQLException e){
+			System.err.println(e.getMessage());
+			return 0;
+		} finally {
+			flushing.unlock();
+		}
+	}
+} // end ReadReceipts
 
-   /*
-    * Check log in credentials for an existing user
-    * @return User login or null is the user does not exist
-    **/
-   public static String LogIn(ProfNetwork esql){
-      try{
-         System.out.print("\tEnter user login: ");
-         String login = in.readLine();
-         System.out.print("\tEnter user password: ");
-         char [] passwordChars = System.console().readPassword();
-		 String password = new String(passwordChars);
-
-         String query = String.format("SELECT * FROM USR WHERE userId = '%s' AND password = '%s'", login, password);
-         int userNum = esql.executeQuery(query);
-	 if (userNum > 0){
-		 query = String.format("SELECT conn_search('"+login+"')");
-		 userNum = esql.executeQuery(query);		 
-		return login;
-	 }
-	 else
-	 {
-		System.out.println("\t\nThe credentials provided were not valid. Please try again.\n");
-	 }
-         return null;
-      }catch(Exception e){
-         System.err.println (e.getMessage ());
-         return null;
-      }
-   }//end
+/********************************************************
+* LoginWarmup Class
+* Purpose: Loads what the first menus show right after a
+*		   user logs in: the profile, the unread count, the
+*		   pending connection requests and the user's reach
+*		   in the connection graph. The loads run at the
+*		   same time, each borrowing its own pooled
+*		   connection, so logging in takes about as long as
+*		   the slowest of them instead of their sum.
+*
+********************************************************/
+class LoginWarmup{
+	// the loads run per login
+	public static final int TASKS = 4;
 
-   /************************
-   * Method Name: TableCleanup
-   * Programmer: Brandon Stevenson
-   * Date: 6/7/15
-   * Purpose: Removes created table
-   * from the stored procedure
-   *
-   ************************/
-   public static void TableCleanup(ProfNetwork esql, String currentUser){
-	   String query = String.format("DROP TABLE %s",  "\""+ currentUser +"\"");
-	   try{
-		esql.executeUpdate(query);
-	   } catch (Exception e){
-		   System.err.println(e.getMessage());
-	   }
-   }
+	// shared by every session, threads end when idle for a minute
+	private static final ExecutorService workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+		60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory(){
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "login-warmup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
-}//end ProfNetwork
+	public int pendingRequests = 0;
+	public int reach = 0;
+
+	/*********************************************
+	* Method Name: run
+	* Purpose: Starts the four loads and waits for
+	* all of them. A load that fails is reported
+	* and the session goes on without it, the menus
+	* read what they need again when used.
+	*
+	* Input: ProfNetwork object, String userId
+	*
+	* Output: LoginWarmup with the pending request
+	* count and the size of the user's reach
+	*
+	**********************************************/
+	public static LoginWarmup run(final ProfNetwork esql, final String userId){
+		final LoginWarmup warm = new LoginWarmup();
+		List<Future<?>> loads = new ArrayList<Future<?>>(TASKS);
+		loads.add(workers.submit(new Callable<Void>(){
+			public Void call() throws Exception{
+				// GetCurrProfile then finds the profile in the cache
+				ProfNetwork.getProfileCache().get(esql, userId);
+				return null;
+			}
+		}));
+		loads.add(workers.submit(new Callable<Void>(){
+			public Void call() throws Exception{
+				esql.getUnreadCounter().refresh(esql, userId);
+				return null;
+			}
+		}));
+		loads.add(workers.submit(new Callable<Void>(){
+			public Void call() throws Exception{
+				List<List<String>> result = esql.executeQueryAndReturnResult("SELECT count(*) FROM connection_usr WHERE connectionid = ? AND status = 'Request'", userId);
+				warm.pendingRequests = Integer.parseInt(result.get(0).get(0).trim());
+				return null;
+			}
+		}));
+		loads.add(workers.submit(new Callable<Void>(){
+			public Void call() throws Exception{
+				warm.reach = esql.getConnectionGraph().warm(userId);
+				return null;
+			}
+		}));
+		for(Future<?> load : loads){
+			try{
+				load.get();
+			} catch (ExecutionException e){
+				System.err.println(e.getCause().getMessage());
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		// Future.get orders the fields written by the loads before these reads
+		return warm;
+	}
+} // end LoginWarmup
 
 /********************************************************
 * Messenger Class
@@ -451,14 +2253,14 @@ class Messenger{
 	*************************************/
 	public static void MessageService(ProfNetwork esql, String currentUser){
 		boolean menuOn = true;
-		System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
 		while(menuOn){
-			System.out.println("\nMessenger Menu");
-			System.out.println("---------");
-			System.out.println("1. Read Menu");
-			System.out.println("2. Send Menu");
-			System.out.println(".........................");
-			System.out.println("9. Return to main menu\n");
+			esql.out.println("\nMessenger Menu");
+			esql.out.println("---------");
+			esql.out.println("1. Read Menu");
+			esql.out.println("2. Send Menu");
+			esql.out.println(".........................");
+			esql.out.println("9. Return to main menu\n");
 			
 			switch(esql.readChoice()){
 				case 1: ReadMessageMenu(esql, currentUser);
@@ -467,7 +2269,7 @@ class Messenger{
 						break;
 				case 9: menuOn = false; break;
 				
-				default: System.out.println("\nERROR: Choice is not valid. Please try again.\n");
+				default: esql.out.println("\nERROR: Choice is not valid. Please try again.\n");
 						
 			}
 		}
@@ -488,46 +2290,40 @@ class Messenger{
 	*********************************/
 	public static void ReadMessageMenu(ProfNetwork esql, String currentUser){
 		boolean getChoice = true;
-		System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+		// the archive is only read when the user asks for old mail
+		boolean oldMail = false;
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
 		while(getChoice){
-			System.out.println("\nRead Messages Menu");
-			System.out.println("---------");
-			System.out.println("1. Show new messages");
-			System.out.println("2. Read Message");
-			System.out.println("3. Show all received messages");
-			System.out.println("4. Delete received message");
-			System.out.println("---------");
-			System.out.println("9. Return to Messenger Menu\n");
+			String table = MessageTable(oldMail);
+			esql.out.println("\nRead Messages Menu");
+			esql.out.println("---------");
+			esql.out.println("1. Show new messages");
+			esql.out.println("2. Read Message");
+			esql.out.println("3. Show all received messages");
+			esql.out.println("4. Delete received message");
+			esql.out.println("5. " + (oldMail ? "Hide" : "Include") + " old mail");
+			esql.out.println("---------");
+			esql.out.println("9. Return to Messenger Menu\n");
 
 			switch(esql.readChoice()){
-				case 1: try{
-							String query = String.format("SELECT msgid, senderid FROM message WHERE receiverid = '%s' AND status = '%s' AND (delete_status = '0' OR delete_status = '1')", currentUser, "Delivered");
-
-							int result = esql.executeQueryAndPrintResult(query);
-							if(result < 1){
-								System.out.println("There are no unread messages.");
-							}
-						}catch(Exception e){
-							System.err.println(e.getMessage());
-						}
+				case 1: // queued read receipts are written first so read messages are not listed as new
+						esql.getReadReceipts().flush();
+						BrowseMessages(esql, new MessagePager("SELECT msgid, senderid, send_time FROM " + table + " WHERE receiverid = ? AND status = 'Delivered' AND (delete_status = 0 OR delete_status = 1)", currentUser, esql.pageSize),
+							"There are no unread messages.");
 						break;
-				case 2: ReadMessage(esql, currentUser);	 
+				case 2: ReadMessage(esql, currentUser, oldMail);	 
 						break;
-				case 3: try{
-							String query = String.format("SELECT msgid,senderid FROM message WHERE receiverid = '%s' AND (status = '%s' OR status = '%s') AND (delete_status = '0' OR delete_status ='1')", currentUser, "Delivered", "Read");
-							int result = esql.executeQueryAndPrintResult(query);
-							if(result < 1){
-								System.out.println("There are no messages in your inbox.");
-							}
-						}catch(Exception e){
-							System.err.println(e.getMessage());
-						}
+				case 3: BrowseMessages(esql, new MessagePager("SELECT msgid, senderid, send_time FROM " + table + " WHERE receiverid = ? AND (status = 'Delivered' OR status = 'Read') AND (delete_status = 0 OR delete_status = 1)", currentUser, esql.pageSize),
+							"There are no messages in your inbox.");
 						break;
-				case 4: DeleteMessage(esql, currentUser, "read");
+				case 4: DeleteMessage(esql, currentUser, "read", oldMail);
+						break;
+				case 5: oldMail = !oldMail;
+						esql.out.println(oldMail ? "Archived messages are now included." : "Only recent messages are shown.");
 						break;
 				case 9: getChoice = false; 
 						break;
-				default: System.out.println("\nInvalid input. Please try again.\n");
+				default: esql.out.println("\nInvalid input. Please try again.\n");
 			}
 		}
 	}
@@ -537,35 +2333,46 @@ class Messenger{
 	* Programmer: Brandon Stevenson
 	* Date: 5/28/15
 	* Purpose: Allows user to read a
-	* received message.
+	* received message. The read receipt is
+	* queued and written later in a batch.
 	* Inputs: ProfNetwork object
 	*		  String object
+	*		  boolean oldMail, also look in the
+	*		  archive
 	*
 	* Outputs: None
 	**********************************/	
-	public static void ReadMessage(ProfNetwork esql, String currentUser){
-		System.out.print("\t\nPlease enter the message id you would like to read: ");
+	public static void ReadMessage(ProfNetwork esql, String currentUser, boolean oldMail){
+		esql.out.print("\t\nPlease enter the message id you would like to read: ");
 		try{
 			String input = esql.in.readLine();
 			int msgid = Integer.parseInt(input.trim());
 			try{
-				System.out.println();
-				String query = String.format("SELECT contents FROM message WHERE msgid = '%s' AND receiverid = '%s' AND (delete_status = '0' OR delete_status = '1')", msgid, currentUser);
-				int result = esql.executeQueryAndPrintResult(query);
-				if(result < 1){
-					System.out.println("No message found with that id. Please try again.");
+				esql.out.println();
+				String query = "SELECT contents, status FROM message WHERE msgid = ? AND receiverid = ? AND (delete_status = 0 OR delete_status = 1)";
+				List<List<String>> result = esql.executeQueryAndReturnResult(query, msgid, currentUser);
+				boolean archived = false;
+				if(result.isEmpty() && oldMail){
+					// archived mail is only shown, its status is left as it is
+					query = "SELECT contents, status FROM message_archive WHERE msgid = ? AND receiverid = ? AND (delete_status = 0 OR delete_status = 1)";
+					result = esql.executeQueryAndReturnResult(query, msgid, currentUser);
+					archived = true;
+				}
+				if(result.isEmpty()){
+					esql.out.println("No message found with that id. Please try again.");
 				}
 				else{
-					try{
-						query = String.format("UPDATE message SET status = '%s' WHERE msgid = '%s'", "Read", msgid);
-						esql.executeUpdate(query);
-					}catch (Exception e){
+					esql.out.println(result.get(0).get(0) + "\t");
+					esql.out.println("\n");
+					if(!archived && result.get(0).get(1).equals("Delivered") && esql.getReadReceipts().queue(msgid)){
+						esql.getUnreadCounter().read(currentUser);
 					}
 				}
 			}catch (Exception e){
+				System.err.println(e.getMessage());
 			}
 		}catch (Exception e){
-			System.out.println("Invalid input. The message id is an integer. Please try again");
+			esql.out.println("Invalid input. The message id is an integer. Please try again");
 		}
 	}
 	// maybe add a search option so a user can message anyone on network from here
@@ -584,29 +2391,38 @@ class Messenger{
 	*********************************/
 	public static void SendMessageMenu(ProfNetwork esql, String currentUser){
 		boolean getChoice = true;
-		System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+		boolean oldMail = false;
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
 		while(getChoice){
-			System.out.println("\nSend Messages Menu");
-			System.out.println("---------");
-			System.out.println("1. Send Message");
-			System.out.println("2. List of Sent Messages");
-			System.out.println("3. View a Sent Message");
-			System.out.println("4. Delete Sent Message");
-			System.out.println("---------");
-			System.out.println("9. Return to Messenger Menu\n");
+			String table = MessageTable(oldMail);
+			esql.out.println("\nSend Messages Menu");
+			esql.out.println("---------");
+			esql.out.println("1. Send Message");
+			esql.out.println("2. List of Sent Messages");
+			esql.out.println("3. View a Sent Message");
+			esql.out.println("4. Delete Sent Message");
+			esql.out.println("5. Send Message to All Connections");
+			esql.out.println("6. " + (oldMail ? "Hide" : "Include") + " old mail");
+			esql.out.println("---------");
+			esql.out.println("9. Return to Messenger Menu\n");
 
 			switch(esql.readChoice()){
 				case 1: SendMessage(esql, currentUser);
 						break;
-				case 2: ListSentMessages(esql, currentUser);
+				case 5: SendMessageAll(esql, currentUser, null);
 						break;
-				case 3: ViewSentMessage(esql, currentUser);
+				case 2: ListSentMessages(esql, currentUser, table);
 						break;
-				case 4: DeleteMessage(esql, currentUser, "send");
+				case 3: ViewSentMessage(esql, currentUser, table);
+						break;
+				case 4: DeleteMessage(esql, currentUser, "send", oldMail);
+						break;
+				case 6: oldMail = !oldMail;
+						esql.out.println(oldMail ? "Archived messages are now included." : "Only recent messages are shown.");
 						break;
 				case 9: getChoice = false;
 						break;
-				default: System.out.println("Invalid Choice. Please try again.");
+				default: esql.out.println("Invalid Choice. Please try again.");
 			}
 		}
 	}
@@ -625,13 +2441,16 @@ class Messenger{
 	*************************************/
 	public static void SendMessage(ProfNetwork esql, String currentUser){
 		try{
-			System.out.print("Please enter the userid of the user you want to send the message: ");
-			String receiveid = esql.in.readLine();
-			System.out.print("\nPlease enter the message you want to send: ");
+			String receiveid = UserConnect.ReadUserId(esql, "Please enter the userid of the user you want to send the message: ");
+			if(receiveid == null){
+				return;
+			}
+			esql.out.print("\nPlease enter the message you want to send: ");
 			String contents = esql.in.readLine();
 			try{
-				String query = String.format("INSERT INTO message (senderid, receiverid, contents, delete_status, status) " + "VALUES('"+currentUser+"', '"+receiveid+"', '"+contents+"', 0, 'Delivered')");
-					esql.executeUpdate(query);
+				String query = "INSERT INTO message (senderid, receiverid, contents, send_time, delete_status, status) VALUES(?, ?, ?, CURRENT_TIMESTAMP, 0, 'Delivered')";
+					esql.executeUpdate(query, currentUser, receiveid, contents);
+					esql.getUnreadCounter().delivered(receiveid);
 			} catch (Exception e){
 				System.err.println(e.getMessage());
 			}
@@ -654,13 +2473,14 @@ class Messenger{
 	*
 	****************************************/
 	public static void SendMessageProfile(ProfNetwork esql, String currentUser, String receiverId){
-		System.out.println("\f\f\f\f\f\f\f\f\f\f");
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f");
 		try{
-			System.out.print("Please enter the message you want to send: ");
+			esql.out.print("Please enter the message you want to send: ");
 			String contents = esql.in.readLine();
 			try{
-				String query = String.format("INSERT INTO message (senderId, receiverId, contents, delete_status, status) " + "VALUES('"+currentUser+"', '"+receiverId+"', '"+contents+"', 0, 'Delivered')");
-				esql.executeUpdate(query);
+				String query = "INSERT INTO message (senderId, receiverId, contents, send_time, delete_status, status) VALUES(?, ?, ?, CURRENT_TIMESTAMP, 0, 'Delivered')";
+				esql.executeUpdate(query, currentUser, receiverId, contents);
+				esql.getUnreadCounter().delivered(receiverId);
 			} catch (Exception e){
 				System.err.println(e.getMessage());
 			}
@@ -669,6 +2489,65 @@ class Messenger{
 		}
 	}
     
+	/***************************************
+	* Method Name: SendMessageAll
+	* Purpose: Sends one message to many users.
+	* With no list it goes to every accepted
+	* connection in a single INSERT ... SELECT
+	* that returns who it reached, otherwise the listed users get it in one
+	* batch. Prints how fast it was sent.
+	*
+	* Input: ProfNetwork object
+	*		 String object
+	*		 List of receiver ids or null for
+	*		 all connections
+	*
+	* Output: None
+	*
+	****************************************/
+	public static void SendMessageAll(ProfNetwork esql, String currentUser, List<String> receivers){
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f");
+		try{
+			esql.out.print("Please enter the message you want to send: ");
+			String contents = esql.in.readLine();
+			try{
+				long start = System.nanoTime();
+				int sent;
+				if(receivers == null){
+					String query = "INSERT INTO message (senderId, receiverId, contents, send_time, delete_status, status) "
+						+ "SELECT ?, connectionId, ?, CURRENT_TIMESTAMP, 0, 'Delivered' FROM connection_edge WHERE userId = ? "
+						+ "RETURNING receiverId";
+					// only the users the insert reached get their unread count moved on
+					receivers = new ArrayList<String>();
+					for(List<String> row : esql.executeQueryAndReturnResult(query, currentUser, contents, currentUser)){
+						receivers.add(row.get(0).trim());
+					}
+					sent = receivers.size();
+				} else{
+					String query = "INSERT INTO message (senderId, receiverId, contents, send_time, delete_status, status) VALUES(?, ?, ?, CURRENT_TIMESTAMP, 0, 'Delivered')";
+					List<Object[]> rows = new ArrayList<Object[]>();
+					for(String receiver : receivers){
+						rows.add(new Object[]{currentUser, receiver, contents});
+					}
+					sent = esql.executeBatch(query, rows);
+				}
+				long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+				for(String receiver : receivers){
+					esql.getUnreadCounter().delivered(receiver);
+				}
+				if(sent == 0){
+					esql.out.println("There was no one to send the message to.");
+				} else{
+					esql.out.println("Sent " + sent + " messages in " + millis + " ms (" + (sent * 1000L / millis) + " messages/s).");
+				}
+			} catch (Exception e){
+				System.err.println(e.getMessage());
+			}
+		} catch (Exception e){
+			System.err.println(e.getMessage());
+		}
+	}
+
 	/*****************************************
 	* Method Name: ListSentMessages 
 	* Programmer: Brandon Stevenson
@@ -682,102 +2561,263 @@ class Messenger{
 	* Output: None
 	*
 	******************************************/
-	public static void ListSentMessages(ProfNetwork esql, String currentUser){
+	public static void ListSentMessages(ProfNetwork esql, String currentUser, String table){
+		BrowseMessages(esql, new MessagePager("SELECT msgid, receiverid, status, send_time FROM " + table + " WHERE senderid = ? AND (delete_status = 0 OR delete_status = 2)", currentUser, esql.pageSize),
+			"You have no sent messages.");
+	}
+
+	/*****************************************
+	* Method Name: BrowseMessages
+	* Purpose: Shows a list of messages one page
+	* at a time, newest first, and lets the user
+	* move to older or newer pages
+	*
+	* Input: ProfNetwork object
+	*		 MessagePager object
+	*		 String shown when there are no messages
+	*
+	* Output: None
+	*
+	******************************************/
+	public static void BrowseMessages(ProfNetwork esql, MessagePager pager, String noMessages){
 		try{
-			String query = String.format("SELECT msgid, receiverid, status FROM message WHERE senderid = '%s' AND (delete_status = '0' OR delete_status = '2')", currentUser);
-			int result = esql.executeQueryAndPrintResult(query);
-			if(result < 1){
-				System.out.println("You have no sent messages.");
+			if(!pager.first(esql)){
+				esql.out.println(noMessages);
+				return;
+			}
+			boolean getChoice = true;
+			while(getChoice){
+				pager.print(esql.out);
+				esql.out.println("1. Older messages");
+				esql.out.println("2. Newer messages");
+				esql.out.println("3. Change page size");
+				esql.out.println("---------");
+				esql.out.println("9. Return to previous menu\n");
+				switch(esql.readChoice()){
+					case 1: if(!pager.older(esql)){
+								esql.out.println("There are no older messages.");
+							} break;
+					case 2: if(!pager.newer(esql)){
+								esql.out.println("This is the newest page.");
+							} break;
+					case 3: esql.out.print("Please enter the number of messages per page: ");
+							try{
+								esql.pageSize = Math.max(1, Integer.parseInt(esql.in.readLine().trim()));
+								pager.setPageSize(esql.pageSize);
+								pager.first(esql);
+							} catch (NumberFormatException e){
+								esql.out.println("Invalid input. The page size is an integer.");
+							} break;
+					case 9: getChoice = false; break;
+					default: esql.out.println("Invalid choice. Please try again.");
+				}
 			}
 		} catch (Exception e){
 			System.err.println(e.getMessage());
 		}
 	}
 	/* allows user to view a sent message */
-	public static void ViewSentMessage(ProfNetwork esql, String currentUser){
+	public static void ViewSentMessage(ProfNetwork esql, String currentUser, String table){
 		try{
-			System.out.print("Please enter the message id you want to view: ");
+			esql.out.print("Please enter the message id you want to view: ");
 			String input = esql.in.readLine();
 			try{
 				int msgid = Integer.parseInt(input.trim());
 				try{
-					System.out.print("\nMessage: ");
-					String query = String.format("SELECT contents FROM message WHERE msgid = '%s' AND senderid = '%s'", msgid, currentUser);
-					int result = esql.executeQueryAndPrintResult(query);
+					esql.out.print("\nMessage: ");
+					String query = "SELECT contents FROM " + table + " WHERE msgid = ? AND senderid = ?";
+					int result = esql.executeQueryAndPrintResult(query, msgid, currentUser);
 					if(result < 1){
-						System.out.println("There is no sent message with that id. Please try again.");
+						esql.out.println("There is no sent message with that id. Please try again.");
 					}
 				} catch (Exception e){
 					System.err.println(e.getMessage());
 				}
 			} catch (Exception e){
-				System.out.println("ERROR: Invalid input. Please enter an integer.");
+				esql.out.println("ERROR: Invalid input. Please enter an integer.");
 			}
 		} catch (Exception e){
 			System.err.println(e.getMessage());
 		}
 	}
 	
+	/*
+	 * The table the message lists read. message only has the recent
+	 * monthly partitions, message_all adds the archived months.
+	 **/
+	public static String MessageTable(boolean oldMail){
+		return oldMail ? "message_all" : "message";
+	}
+
 	/***************************************
 	* Method Name: DeleteMessage
 	* Programmer: Brandon Stevenson
 	* Date: 5/29/15
 	* Purpose: Allows user to delete a 
-	* recieved or sent message
+	* recieved or sent message. With old mail
+	* included, a message that is not in message
+	* is looked for in message_archive.
 	*
 	* Input: ProfNetwork object
 	*		 String object
+	*		 boolean oldMail
 	*
 	* Object: None
 	*
 	****************************************/
-	public static void DeleteMessage(ProfNetwork esql, String currentUser, String type){
-		System.out.print("Please enter the message id that you would like to delete: ");
+	public static void DeleteMessage(ProfNetwork esql, String currentUser, String type, boolean oldMail){
+		esql.out.print("Please enter the message id that you would like to delete: ");
 		try{
 			String input = esql.in.readLine();
 			int msgid = Integer.parseInt(input.trim());
 			try{
+				// message_all is a view over both tables, so the update goes to the table the row is in
+				String[] tables = oldMail ? new String[]{"message", "message_archive"} : new String[]{"message"};
+				// 1 is deleted by the sender, 2 by the receiver and 3 by both, which
+				// MessagePurger removes later. Each side adds its own bit in one
+				// statement, so the two can delete at the same time without a race.
+				String update = type.equals("send")
+					? " SET delete_status = delete_status + 1 WHERE msgid = ? AND senderid = ? AND delete_status IN (0, 2) RETURNING status"
+					: " SET delete_status = delete_status + 2 WHERE msgid = ? AND receiverid = ? AND delete_status IN (0, 1) RETURNING status";
+				List<List<String>> result = Collections.emptyList();
+				for(int i = 0; i < tables.length && result.isEmpty(); i++){
+					result = esql.executeQueryAndReturnResult("UPDATE " + tables[i] + update, msgid, currentUser);
+				}
 				if(type.equals("send")){
-					String query = String.format("SELECT delete_status FROM message WHERE msgid = '%s' AND senderid = '%s'", msgid, currentUser);
-					List<List<String>> result = new ArrayList<List<String>>();
-					result = esql.executeQueryAndReturnResult(query);
-					try{
-						if(result.get(0).get(0).equals("0")){
-							query = String.format("UPDATE message set delete_status = '1' WHERE msgid = '%s'", msgid);
-							esql.executeUpdate(query);
-						} else{
-							query = String.format("DELETE FROM message WHERE msgid = '%s'", msgid);
-							esql.executeUpdate(query);
-						}
-					} catch (Exception e){
-						System.err.println(e.getMessage());
+					if(result.isEmpty()){
+						esql.out.println("There is no sent message with that id.");
 					}
 				} else {
-					String query = String.format("SELECT delete_status FROM message WHERE msgid = '%s' AND receiverid = '%s'", msgid, currentUser);
-					List<List<String>> result = new ArrayList<List<String>>();
-					result = esql.executeQueryAndReturnResult(query);
-					try{
-						if(result.get(0).get(0).equals("0")){
-				
-							query = String.format("UPDATE message SET delete_status = '2' WHERE msgid = '%s'", msgid);
-							esql.executeUpdate(query);
-						} else{
-							query = String.format("DELETE FROM message WHERE msgid = '%s'", msgid);
-							esql.executeUpdate(query);
-						}
-					} catch (Exception e){
-						System.err.println(e.getMessage());
+					if(result.isEmpty()){
+						esql.out.println("There is no received message with that id.");
+					} else if(result.get(0).get(0).equals("Delivered") && !esql.getReadReceipts().isQueued(msgid)){
+						// a queued receipt already took the message off the unread count
+						esql.getUnreadCounter().read(currentUser);
 					}
 				}
 			} catch (Exception e){
 				System.err.println(e.getMessage());
 			}
 		} catch (Exception e){
-			System.out.println("Please enter a valid message id.");
+			esql.out.println("Please enter a valid message id.");
 		}
 	}
 } // end Messenger
 
+/********************************************************
+* MessagePurger Class
+* Purpose: Removes the messages both the sender and the
+*		   receiver have deleted (delete_status 3), from
+*		   message and from message_archive. The
+*		   rows are deleted a chunk at a time, each chunk
+*		   its own short statement, so the purge never
+*		   holds many row locks or a long transaction.
+*
+********************************************************/
+class MessagePurger{
+	// how often the purge runs
+	public static final long PURGE_INTERVAL = 300000;
+	// rows removed per statement
+	public static final int CHUNK_SIZE = 500;
+
+	private final ProfNetwork esql;
+	private final Timer timer = new Timer("message-purger", true);
+
+	public MessagePurger(ProfNetwork esql){
+		this.esql = esql;
+	}
+
+	/* runs the purge now and then every PURGE_INTERVAL */
+	public void start(){
+		timer.schedule(new TimerTask(){
+			public void run(){
+				try{
+					purge();
+				} catch (SQLException e){
+					System.err.println(e.getMessage());
+				}
+			}
+		}, 0, PURGE_INTERVAL);
+	}
+
+	public void stop(){
+		timer.cancel();
+	}
+
+	/*********************************************
+	* Method Name: purge
+	* Purpose: Deletes doubly deleted messages in
+	* chunks of CHUNK_SIZE until a chunk comes back
+	* short
+	*
+	* Input: None
+	*
+	* Output: number of messages removed
+	*
+	**********************************************/
+	public int purge() throws SQLException{
+		int total = 0;
+		for(String table : new String[]{"message", "message_archive"}){
+			String query = "DELETE FROM " + table + " WHERE (msgid, send_time) IN (SELECT msgid, send_time FROM " + table + " WHERE delete_status = 3 LIMIT ?)";
+			int removed;
+			do{
+				removed = esql.executeUpdate(query, CHUNK_SIZE);
+				total += removed;
+			}while(removed == CHUNK_SIZE);
+		}
+		return total;
+	}
+} // end MessagePurger
+
+/********************************************************
+* MessageArchiver Class
+* Purpose: Once a day makes the monthly message
+*		   partitions that will be needed next and moves
+*		   the months older than HOT_MONTHS from message to
+*		   message_archive, using the functions of
+*		   message_partitions.sql. Moving a partition only
+*		   changes the catalog, no rows are copied.
+*
+********************************************************/
+class MessageArchiver{
+	public static final long ARCHIVE_INTERVAL = 24L * 60 * 60 * 1000;
+	// months of mail the menus read without asking for old mail
+	public static final int HOT_MONTHS = 6;
+	// months made ahead of the current one
+	public static final int MONTHS_AHEAD = 2;
+
+	private final ProfNetwork esql;
+	private final Timer timer = new Timer("message-archiver", true);
+
+	public MessageArchiver(ProfNetwork esql){
+		this.esql = esql;
+	}
+
+	/* runs now and then every ARCHIVE_INTERVAL */
+	public void start(){
+		timer.schedule(new TimerTask(){
+			public void run(){
+				try{
+					archive();
+				} catch (SQLException e){
+					System.err.println(e.getMessage());
+				}
+			}
+		}, 0, ARCHIVE_INTERVAL);
+	}
+
+	public void stop(){
+		timer.cancel();
+	}
+
+	/* returns the number of partitions moved to the archive */
+	public int archive() throws SQLException{
+		esql.executeQueryAndReturnResult("SELECT create_message_partitions(?)", MONTHS_AHEAD);
+		List<List<String>> moved = esql.executeQueryAndReturnResult("SELECT archive_message_partitions(?)", HOT_MONTHS);
+		return Integer.parseInt(moved.get(0).get(0).trim());
+	}
+} // end MessageArchiver
+
 /**************************************************
 * UserConnect class
 * Programmer: Brandon Stevenson
@@ -791,6 +2831,20 @@ class UserConnect{
 	public static Profile prof = new Profile();
 	public static Messenger msg = new Messenger();
 
+	// search results shown, and rows read from usr to rank them by distance
+	public static final int SEARCH_LIMIT = 20;
+	public static final int SEARCH_CANDIDATES = 50;
+
+	// user ids offered when a typed userid does not exist
+	public static final int SUGGESTIONS = 5;
+
+	// status codes of send_connection_request in triggers.sql
+	public static final int REQUEST_SENT = 0;
+	public static final int REQUEST_EXISTS = 1;
+	public static final int ALREADY_CONNECTED = 2;
+	public static final int OUT_OF_RANGE = 3;
+	public static final int NO_SUCH_USER = 4;
+
 	/*********************************************
 	* Method Name: ConnectMenu
 	* Programmer: Brandon Stevenson
@@ -806,23 +2860,74 @@ class UserConnect{
 	public static void ConnectMenu(ProfNetwork esql, String currentUser){
 		boolean getChoice = true;
 		while(getChoice){
-			System.out.println("\nConnection Menu");
-			System.out.println("1. View Connection List");
-			System.out.println("2. Accept/Decline Requests");
-			System.out.println("3. Send Connection Request");
-			System.out.println("---------");
-			System.out.println("9. Return to main menu\n");
+			esql.out.println("\nConnection Menu");
+			esql.out.println("1. View Connection List");
+			esql.out.println("2. Accept/Decline Requests");
+			esql.out.println("3. Send Connection Request");
+			esql.out.println("4. People You May Know");
+			esql.out.println("---------");
+			esql.out.println("9. Return to main menu\n");
 				
 			switch(esql.readChoice()){
 				case 1: ConnectionList(esql, currentUser); break;
 				case 2: ViewRequest(esql, currentUser); break;
 				case 3: NonProfileRequest(esql, currentUser); break;
+				case 4: PeopleYouMayKnow(esql, currentUser); break;
 				case 9: getChoice = false; break;
-				default: System.out.println("Invalid choice. Please try again.");
+				default: esql.out.println("Invalid choice. Please try again.");
+			}
+		}
+	}
+	
+	/***********************************************
+	* Method Name: PeopleYouMayKnow
+	* Purpose: Lists the users 2 connection levels
+	* away that the user is most likely to know and
+	* lets them view a profile or send a request
+	*
+	* Input: ProfNetwork object
+	*	     String object
+	*
+	* Output: None
+	*
+	*************************************************/
+	public static void PeopleYouMayKnow(ProfNetwork esql, String currentUser){
+		try{
+			List<Recommender.Suggestion> suggestions = esql.getRecommender().suggestions(currentUser);
+			if(suggestions.isEmpty()){
+				esql.out.println("\nNo suggestions yet. Try adding connections, work experience or education.\n");
+				return;
+			}
+			boolean getChoice = true;
+			while(getChoice){
+				esql.out.println("\nPeople You May Know: ");
+				for(int i = 0; i < suggestions.size(); i++){
+					esql.out.println(""+(i + 1)+". " + suggestions.get(i));
+				}
+				esql.out.println("\n1. View profile");
+				esql.out.println("2. Send connection request");
+				esql.out.println("---------");
+				esql.out.println("9. Return to previous menu\n");
+
+				int usrChoice = 0;
+				switch(esql.readChoice()){
+					case 1: esql.out.print("Please enter the number of the user you wish to view: ");
+							usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
+							prof.ViewUserProfile(esql, currentUser, suggestions.get(usrChoice).userId);
+							break;
+					case 2: esql.out.print("Please enter the number of the user you wish to connect with: ");
+							usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
+							ProfileRequest(esql, currentUser, suggestions.get(usrChoice).userId);
+							break;
+					case 9: getChoice = false; break;
+					default: esql.out.println("Invalid choice. Please try again.");
+				}
 			}
+		} catch (Exception e){
+			System.err.println(e.getMessage());
 		}
 	}
-	
+
 	/***********************************************
 	* Method Name: ConnectionList
 	* Programmer: Brandon Stevenson
@@ -836,42 +2941,55 @@ class UserConnect{
 	*
 	*************************************************/
 	public static void ConnectionList(ProfNetwork esql, String currentUser){
-		List<List<String>> result = new ArrayList<List<String>>();
+		NumberedListPrinter result = new NumberedListPrinter(esql.out, "\nConnection List: ");
 	   try{
-			String query = String.format("SELECT connectionid AS userid FROM connection_usr WHERE userID = '%s' AND status										= '%s' UNION ALL SELECT userid FROM connection_usr WHERE connectionid = '%s' AND status= '%s'", 
-						   currentUser, "Accept", currentUser, "Accept");
-			result = esql.executeQueryAndReturnResult(query);
-			if(result.isEmpty()){
-				System.out.println("You currently do not have any friends. Try sending connection requests.\n");
+			String query = "SELECT connectionid FROM connection_edge WHERE userid = ?";
+			// the list is printed as the rows arrive, only the user ids are kept for the menu
+			esql.executeQueryAndStream(query, result, currentUser);
+			if(result.values.isEmpty()){
+				esql.out.println("You currently do not have any friends. Try sending connection requests.\n");
 			}
 			else{	
 				boolean getChoice = true;
+				boolean listed = true;
 				while(getChoice){
-					System.out.println("\nConnection List: ");
-					int count = 1;
-					for(int i = 0; i < result.size(); i++){
-						System.out.println(""+count+". " + ""+result.get(i).get(0)+"");
-						count++;
+					if(!listed){
+						result.reprint();
 					}
-					System.out.println("\n1. View connection profile");
-					System.out.println("2. Send Message");
-					System.out.println("---------");
-					System.out.println("9. Return to previous menu\n");
+					listed = false;
+					esql.out.println("\n1. View connection profile");
+					esql.out.println("2. Send Message");
+					esql.out.println("3. Send Message to all connections");
+					esql.out.println("4. Send Message to selected connections");
+					esql.out.println("---------");
+					esql.out.println("9. Return to previous menu\n");
 					
 					int usrChoice = 0; 
 					switch(esql.readChoice()){
-						case 1: System.out.print("Please enter the number of the connection you wish to view:");
+						case 1: esql.out.print("Please enter the number of the connection you wish to view:");
 								usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
-								System.out.println();
-								prof.ViewUserProfile(esql, currentUser, result.get(usrChoice).get(0));
+								esql.out.println();
+								prof.ViewUserProfile(esql, currentUser, result.values.get(usrChoice));
 								break;
-						case 2: System.out.println("Please enter the number of the connection you wish to send a message.");
+						case 2: esql.out.println("Please enter the number of the connection you wish to send a message.");
 								usrChoice = Integer.parseInt(esql.in.readLine().trim()) -1;
-								System.out.println();
-								msg.SendMessageProfile(esql, currentUser, result.get(usrChoice).get(0));
+								esql.out.println();
+								msg.SendMessageProfile(esql, currentUser, result.values.get(usrChoice));
+								break;
+						case 3: msg.SendMessageAll(esql, currentUser, null);
+								break;
+						case 4: esql.out.println("Please enter the numbers of the connections you wish to send a message, separated by commas.");
+								List<String> receivers = new ArrayList<String>();
+								for(String number : esql.in.readLine().split(",")){
+									if(number.trim().length() > 0){
+										receivers.add(result.values.get(Integer.parseInt(number.trim()) - 1));
+									}
+								}
+								esql.out.println();
+								msg.SendMessageAll(esql, currentUser, receivers);
 								break;
 						case 9: getChoice = false; break;
-						default: System.out.println("Invalid choice. Please try again.");	
+						default: esql.out.println("Invalid choice. Please try again.");	
 								 
 					}
 				}
@@ -898,36 +3016,38 @@ class UserConnect{
 	*
 	************************************************/
 	public static void ViewRequest(ProfNetwork esql, String currentUser){
-		List<List<String>> result = new ArrayList<List<String>>();
+		NumberedListPrinter result = new NumberedListPrinter(esql.out, "Connection Requests: ");
 		try{
-			String query = String.format("SELECT userid FROM connection_usr WHERE connectionid = '"+currentUser+"' AND status = 'Request'");		
-			result = esql.executeQueryAndReturnResult(query);
-			if(result.isEmpty()){
-				System.out.println("There are no pending connection requests.");
+			String query = "SELECT userid FROM connection_usr WHERE connectionid = ? AND status = 'Request'";
+			// the requests are printed as the rows arrive, only the user ids are kept for the menu
+			esql.executeQueryAndStream(query, result, currentUser);
+			if(result.values.isEmpty()){
+				esql.out.println("There are no pending connection requests.");
 			} else{
 				/* gives an interactive menu for the user to accept/reject requests from */
 				boolean getChoice = true;
-				while(!result.isEmpty() && getChoice){
-					int count = 1;
-					System.out.println("Connection Requests: ");
-					for(int i = 0; i < result.size(); i++){
-						System.out.println(""+count+". " + ""+result.get(i).get(0)+"");
-						count++;
+				boolean listed = true;
+				while(!result.values.isEmpty() && getChoice){
+					if(!listed){
+						result.reprint();
 					}
-					System.out.println("\n1. Accept request");
-					System.out.println("2. Reject request");
-					System.out.println("---------");
-					System.out.println("9. Return to Connection Menu\n");
+					listed = false;
+					esql.out.println("\n1. Accept request");
+					esql.out.println("2. Reject request");
+					esql.out.println("---------");
+					esql.out.println("9. Return to Connection Menu\n");
 
 					int reqChoice = 0;
 					switch(esql.readChoice()){
-						case 1: System.out.print("Please enter the number of the request to accept: ");
+						case 1: esql.out.print("Please enter the number of the request to accept: ");
 								try{
 									reqChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
-									query = String.format("UPDATE connection_usr SET status = 'Accept' WHERE userid = '"+result.get(reqChoice).get(0)+"' AND connectionid = '"+currentUser+"'");
+									query = "UPDATE connection_usr SET status = 'Accept' WHERE userid = ? AND connectionid = ?";
 									try{
-										esql.executeUpdate(query);
-										result.remove(reqChoice);
+										esql.executeUpdate(query, result.values.get(reqChoice), currentUser);
+										esql.getConnectionGraph().addConnection(result.values.get(reqChoice), currentUser);
+										esql.getRecommender().connectionAdded(result.values.get(reqChoice), currentUser);
+										result.values.remove(reqChoice);
 									} catch (Exception e){
 										System.err.println(e.getMessage());
 									}
@@ -935,13 +3055,13 @@ class UserConnect{
 									System.err.println(e.getMessage());
 								}
 								break;
-						case 2: System.out.print("Please enter the number of the request to reject: ");
+						case 2: esql.out.print("Please enter the number of the request to reject: ");
 								try{
 									reqChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
-									query = String.format("UPDATE connection_usr SET status = 'Reject' WHERE userid = '"+result.get(reqChoice).get(0)+"' AND connectionid = '"+currentUser+"'");
+									query = "UPDATE connection_usr SET status = 'Reject' WHERE userid = ? AND connectionid = ?";
 									try{
-										esql.executeUpdate(query);
-										result.remove(reqChoice);
+										esql.executeUpdate(query, result.values.get(reqChoice), currentUser);
+										result.values.remove(reqChoice);
 									} catch (Exception e){
 										System.err.println(e.getMessage());
 									}
@@ -950,9 +3070,9 @@ class UserConnect{
 								}
 								break;
 						case 9: getChoice = false; break;
-						default: System.out.println("Invalid choice. Please try again.");
+						default: esql.out.println("Invalid choice. Please try again.");
 					}
-					System.out.println();	
+					esql.out.println();	
 				}
 			}
 					
@@ -976,20 +3096,14 @@ class UserConnect{
 	*
 	**********************************************/
 	public static void NonProfileRequest(ProfNetwork esql, String currentUser){
-		System.out.print("\nPlease enter the userid of the person you want to connect with: ");
 		try{
-			String userReq = esql.in.readLine();
-			if(ConnectionDepthCheck(esql, currentUser, userReq)){
-				// look into making a trigger that fills in the status part of connection_usr
-				String query = String.format("INSERT INTO connection_usr (userId, connectionId, status) " + "VALUES('"+currentUser+"', '"+userReq+"', 'Request')");
-				esql.executeUpdate(query);
-			} else {
-				System.out.println("\nCannot send request to this user. They are not within a valid connection level.");
+			String userReq = ReadUserId(esql, "\nPlease enter the userid of the person you want to connect with: ");
+			if(userReq == null){
+				return;
 			}
+			SendConnectionRequest(esql, currentUser, userReq);
 		} catch (Exception e){
-			if(e.getMessage().contains("duplicate")){
-				System.out.println("You have already sent a connection to this person.");
-			}
+			System.err.println(e.getMessage());
 		}
 	}
 	
@@ -1007,61 +3121,77 @@ class UserConnect{
 	*
 	*******************************************/
 	public static void ProfileRequest(ProfNetwork esql, String currentUser, String userReq){
-		if(ConnectionDepthCheck(esql, currentUser, userReq)){
-			System.out.println("Sending connection request to '"+userReq+"'");
-			String query = String.format("INSERT INTO connection_usr (userId, connectionId, status) " + "VALUES('"+currentUser+"', '"+userReq+"', 'Request')");
-			try{
-				esql.executeUpdate(query);
-			} catch (Exception e){
-				System.err.println(e.getMessage());
+		esql.out.println("Sending connection request to '"+userReq+"'");
+		SendConnectionRequest(esql, currentUser, userReq);
+	}
+	
+	/*******************************************
+	* Method Name: ReadUserId
+	* Purpose: Asks for a userid and checks it
+	* against the user directory. When there is no
+	* such user the closest ids are suggested.
+	*
+	* Input: ProfNetwork object
+	*        String prompt
+	*
+	* Ouput: the userid, or null when it does not
+	* exist
+	*
+	*******************************************/
+	public static String ReadUserId(ProfNetwork esql, String prompt) throws IOException{
+		esql.out.print(prompt);
+		String userId = esql.in.readLine();
+		if(userId == null){
+			return null;
+		}
+		userId = userId.trim();
+		try{
+			UserDirectory users = esql.getUserDirectory();
+			if(users.contains(userId)){
+				return userId;
 			}
-		} else{
-			System.out.println("Cannot send a connection request to this user.");
+			esql.out.println("\nThere is no user '" + userId + "'.");
+			List<String> suggestions = users.suggest(userId, SUGGESTIONS);
+			if(!suggestions.isEmpty()){
+				esql.out.println("Did you mean: " + suggestions);
+			}
+		} catch (SQLException e){
+			System.err.println(e.getMessage());
 		}
+		return null;
 	}
-	
+
 	/*******************************************
-	* Method Name: ConnectionDepthCheck
-	* Programmer: Brandon Stevenson
-	* Date: 6/1/15
-	* Purpose: Checks for a valid connection
-	* level for the user to send a request
+	* Method Name: SendConnectionRequest
+	* Purpose: Sends a connection request with the
+	* send_connection_request function from
+	* triggers.sql, which checks the connection level
+	* and inserts the request in one round trip, and
+	* tells the user how it went
 	*
 	* Input: ProfNetwork object
 	*        String object
+	*        String object
 	* 
-	* Ouput: None
+	* Ouput: the status code of the function
 	*
 	*******************************************/
-	public static boolean ConnectionDepthCheck(ProfNetwork esql, String currentUser, String userReq){
-		boolean status = false;
-		List<List<String>> result = new ArrayList<List<String>>();
-		String query = String.format("SELECT count(*) FROM connection_usr WHERE userid = '%s' AND status = 'Accept' OR connectionid = '%s' AND status = 'Accept'", currentUser, currentUser);
-		// add check for 5 count of friends and execute depth check only if count > 4
+	public static int SendConnectionRequest(ProfNetwork esql, String currentUser, String userReq){
 		try{
-			result = esql.executeQueryAndReturnResult(query);
-			int count = Integer.parseInt(result.get(0).get(0).trim());
-			if(count > 4){	
-				try{
-					query = String.format("SELECT * FROM %s WHERE userid = '%s'", "\"" + currentUser + "\"", userReq);
-					int size = esql.executeQuery(query);
-					if(size > 0){
-						status = true;
-					} else {
-						status = false;
-					}
-				} catch (Exception e){
-					System.err.println(e.getMessage());
-					status = false;
-				}
-			} else {
-				status = true;
+			List<List<String>> result = esql.executeQueryAndReturnResult("SELECT send_connection_request(?, ?)", currentUser, userReq);
+			int status = Integer.parseInt(result.get(0).get(0).trim());
+			switch(status){
+				case REQUEST_SENT: esql.out.println("\nConnection request sent."); break;
+				case REQUEST_EXISTS: esql.out.println("\nYou have already sent a connection to this person."); break;
+				case ALREADY_CONNECTED: esql.out.println("\nYou are already connected to this person."); break;
+				case OUT_OF_RANGE: esql.out.println("\nCannot send request to this user. They are not within a valid connection level."); break;
+				default: esql.out.println("\nCannot send a connection request to this user.");
 			}
+			return status;
 		} catch (Exception e){
-			status = false;
 			System.err.println(e.getMessage());
+			return NO_SUCH_USER;
 		}
-		return status;
 	}
 	
 	/***********************************************
@@ -1081,47 +3211,38 @@ class UserConnect{
 	public static void Search(ProfNetwork esql, String currentUser){
 		List<List<String>> result = new ArrayList<List<String>>();
 		try{
-			System.out.print("Please enter the first name of user: ");
-			String firstName = esql.in.readLine();
+			esql.out.print("Please enter the name of the user, or the start of it: ");
+			String name = esql.in.readLine();
 			try{
-				System.out.print("Please enter the last name of user: ");
-				String lastName = esql.in.readLine();
-				String fullName = ""+firstName+" " + lastName;
-				boolean getName = true;
-				System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
-				System.out.print("Search Results: ");
-				String query = String.format("SELECT userid FROM usr WHERE name = '"+fullName+"'");
+				esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+				esql.out.print("Search Results: ");
 				try{
-					result = esql.executeQueryAndReturnResult(query);
+					result = SearchNames(esql, currentUser, name);
 					if(result.isEmpty()){
-						System.out.println("\f");
-						System.out.println("No results");
+						esql.out.println("\f");
+						esql.out.println("No results");
 					} else{
-						int count = 1;
 						for(int i = 0; i < result.size(); i++){
-							//for now will not need inner loop
-							//if selecting more will need to add inner loop
-							System.out.println("\n\t"+count+". " + ""+result.get(i).get(0)+"");
-							count++;
+							esql.out.println("\n\t"+(i + 1)+". " + ""+result.get(i).get(0)+" (" + result.get(i).get(1) + ")" + result.get(i).get(2));
 						}
 					}
 				} catch (Exception e){
 					System.err.println(e.getMessage());
 				}
 				int usrChoice = 0;
-				System.out.println("\n1. View Profile");
-				System.out.println("2. Send Message");
-				System.out.println("3. Search Again");
-				System.out.println("---------");
-				System.out.println("9. Return to Main Menu\n");
+				esql.out.println("\n1. View Profile");
+				esql.out.println("2. Send Message");
+				esql.out.println("3. Search Again");
+				esql.out.println("---------");
+				esql.out.println("9. Return to Main Menu\n");
 				switch(esql.readChoice()){
-					case 1: System.out.print("Please enter the number of the user you wish to view: ");
+					case 1: esql.out.print("Please enter the number of the user you wish to view: ");
 							try{
 								usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
 								prof.ViewUserProfile(esql, currentUser, result.get(usrChoice).get(0));
 							} catch (Exception e){
 							} break;
-					case 2: System.out.print("Please enter the number of the user you wish to send a message: ");
+					case 2: esql.out.print("Please enter the number of the user you wish to send a message: ");
 							try{
 								usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
 								msg.SendMessageProfile(esql, currentUser, result.get(usrChoice).get(0));
@@ -1129,7 +3250,7 @@ class UserConnect{
 							} break;
 					case 3: Search(esql, currentUser); break;
 					case 9: break;
-					default: System.out.println("Invalid input. Please try again.");
+					default: esql.out.println("Invalid input. Please try again.");
 				}
 			} catch (Exception e){
 				System.err.println(e.getMessage());
@@ -1138,7 +3259,73 @@ class UserConnect{
 			System.err.println(e.getMessage());
 		}
 	}
-	
+
+
+	/**************************************************
+	* Method Name: SearchNames
+	* Purpose: Finds users whose name starts with or
+	* is close to the given text. Names that start with
+	* the text come first, then users closer to the
+	* searching user in the connection graph, then the
+	* closest spellings.
+	*
+	* Input: ProfNetwork object
+	*		 String object
+	*		 String text to search for
+	*
+	* Output: rows of userid, name and a note of how
+	* far the user is, at most SEARCH_LIMIT of them
+	*
+	***************************************************/
+	public static List<List<String>> SearchNames(ProfNetwork esql, String currentUser, String name) throws SQLException{
+		String text = name.trim().toLowerCase();
+		List<List<String>> rows = new ArrayList<List<String>>();
+		if(text.length() == 0){
+			return rows;
+		}
+		// the prefix match is a LIKE, so its wildcards in the text are escaped
+		String prefix = text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+		String query = "SELECT userid, name, lower(name) LIKE ? AS prefix FROM usr "
+			+ "WHERE lower(name) LIKE ? OR lower(name) % ? "
+			+ "ORDER BY lower(name) LIKE ? DESC, similarity(lower(name), ?) DESC, userid LIMIT " + SEARCH_CANDIDATES;
+		rows = esql.executeQueryAndReturnResult(query, prefix, prefix, text, prefix, text);
+
+		List<String> ids = new ArrayList<String>();
+		for(List<String> row : rows){
+			ids.add(row.get(0).trim());
+		}
+		final int[] distance = esql.getConnectionGraph().distances(currentUser, ids, 3);
+		final List<List<String>> candidates = rows;
+		Integer[] order = new Integer[candidates.size()];
+		for(int i = 0; i < order.length; i++){
+			order[i] = i;
+		}
+		// the sql order is kept between users with the same match and distance
+		Arrays.sort(order, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b){
+				boolean prefixA = candidates.get(a).get(2).startsWith("t");
+				boolean prefixB = candidates.get(b).get(2).startsWith("t");
+				if(prefixA != prefixB){
+					return prefixA ? -1 : 1;
+				}
+				int distA = distance[a] == 0 ? Integer.MAX_VALUE : distance[a];
+				int distB = distance[b] == 0 ? Integer.MAX_VALUE : distance[b];
+				if(distA != distB){
+					return distA < distB ? -1 : 1;
+				}
+				return a - b;
+			}
+		});
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(int i = 0; i < order.length && i < SEARCH_LIMIT; i++){
+			List<String> row = candidates.get(order[i]);
+			int d = distance[order[i]];
+			result.add(Arrays.asList(row.get(0).trim(), row.get(1) == null ? "" : row.get(1).trim(),
+				d == 1 ? " - connection" : d == 2 ? " - 2nd" : d == 3 ? " - 3rd" : ""));
+		}
+		return result;
+	}
+
 } // end UserConnect
 
 /**********************************************
@@ -1172,23 +3359,24 @@ class Profile{
 		boolean getChoice = true;
 		while(getChoice){
 			// Potentially add friends list in here
-			System.out.println("Profile Menu");
-			System.out.println("1. View Connection List");
-			System.out.println("2. Change E-mail");
-			System.out.println("3. Change password");
-			System.out.println("4. Change Full Name");
-			System.out.println("5. Change Date of Birth");
-			System.out.println("6. Add Work Experience");
-			System.out.println("7. Update Work Experience");
-			System.out.println("8. Delete Work Experience");
-			System.out.println("9. Add Education Details");
-			System.out.println("10. Update Education Details");
-			System.out.println("11. Remove Education Details");
-			System.out.println("12. Display Current Profile");
-			System.out.println("---------");
-			System.out.println("14. Return to Main Menu");
+			esql.out.println("Profile Menu");
+			esql.out.println("1. View Connection List");
+			esql.out.println("2. Change E-mail");
+			esql.out.println("3. Change password");
+			esql.out.println("4. Change Full Name");
+			esql.out.println("5. Change Date of Birth");
+			esql.out.println("6. Add Work Experience");
+			esql.out.println("7. Update Work Experience");
+			esql.out.println("8. Delete Work Experience");
+			esql.out.println("9. Add Education Details");
+			esql.out.println("10. Update Education Details");
+			esql.out.println("11. Remove Education Details");
+			esql.out.println("12. Display Current Profile");
+			esql.out.println("---------");
+			esql.out.println("14. Return to Main Menu");
 
-			switch(esql.readChoice()){
+			int choice = esql.readChoice();
+			switch(choice){
 				case 1: conn.ConnectionList(esql, currentUser); break;
 				case 2: UpdateEmail(esql,currentUser); break;
 				case 3: UpdatePassword(esql,currentUser); break;
@@ -1202,7 +3390,20 @@ class Profile{
 				case 11: DeleteSchool(esql,currentUser); break;
 				case 12: GetCurrProfile(esql,currentUser); break;
 				case 14: getChoice = false; break;
-				default: System.out.println("Invalid input. Please try again.");
+				default: esql.out.println("Invalid input. Please try again.");
+			}
+		}
+	}
+
+	// called once a change to the profile of the user was committed
+	private static void ProfileChanged(ProfNetwork esql, String currentUser, boolean workOrSchool){
+		ProfNetwork.getProfileCache().invalidate(currentUser);
+		if (workOrSchool){
+			// work and education are part of the people you may know score
+			try{
+				esql.getRecommender().profileChanged(esql, currentUser);
+			} catch (Exception e){
+				System.err.println(e.getMessage());
 			}
 		}
 	}
@@ -1221,64 +3422,33 @@ class Profile{
 	*
 	*****************************************/
 	public static void GetCurrProfile(ProfNetwork esql, String currentUser){
-		String query = String.format("SELECT name, email, date_of_birth FROM usr WHERE userid = '"+currentUser+"'");
-		List<List<String>> result = new ArrayList<List<String>>();
 		try{
-			System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
-			result =  esql.executeQueryAndReturnResult(query);
-			System.out.println("\n\nName: "+result.get(0).get(0)+"");
-			System.out.println("Email: "+result.get(0).get(1)+"");
-			System.out.println("Date of Birth: "+result.get(0).get(2)+"");
+			esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+			UserProfile profile = ProfNetwork.getProfileCache().get(esql, currentUser);
+			esql.out.println("\n\nName: "+profile.name+"");
+			esql.out.println("Email: "+profile.email+"");
+			esql.out.println("Date of Birth: "+profile.dateOfBirth+"");
+			PrintWorkAndEducation(esql, profile);
 		} catch (Exception e){
 			System.err.println(e.getMessage());
 		}
-		result.clear();
-		query = String.format("SELECT company, role, location, start_date, end_date FROM work_expr WHERE userid = '"+currentUser+"'");
-		int count = 1;
-		try{
-			// prints out work details
-			System.out.println("Work Experience: ");
-			result = esql.executeQueryAndReturnResult(query);
-			if(result.isEmpty()){
-				System.out.println("None");
-			} else{
-				for(int i = 0; i < result.size(); i++){
-					System.out.print("\t "+count+". ");
-					for(int j = 0; j < result.get(i).size(); j++){	
-						System.out.print(""+result.get(i).get(j)+"");
-						System.out.print(" ");
-					}
-					System.out.println();
-					count++;
-				}
-				System.out.println();
-			}
-		} catch (Exception e){
-			System.err.println(e.getMessage());
+	}
+
+	/* prints the work experience and education parts of a profile */
+	public static void PrintWorkAndEducation(ProfNetwork esql, UserProfile profile){
+		esql.out.println("Work Experience: ");
+		if(profile.work.isEmpty()){
+			esql.out.println("None");
+		} else{
+			UserProfile.printRows(esql.out, profile.work);
+			esql.out.println();
 		}
-		count = 1;
-		result.clear();
-		query = String.format("SELECT institution_name, major, degree, start_date, end_date FROM educational_details WHERE userid = '"+currentUser+"'");
-		try{
-			// prints out education details
-			System.out.println("Education: ");
-			result = esql.executeQueryAndReturnResult(query);
-			if(result.isEmpty()){
-				System.out.println("None\n");
-			} else{
-				for(int i = 0; i < result.size(); i++){
-					System.out.print("\t "+count+". "); 
-					for(int j = 0; j < result.get(i).size(); j++){
-						System.out.print(""+result.get(i).get(j)+"");
-						System.out.print(" ");
-					}
-					count++;
-					System.out.println();
-				}
-				System.out.println();
-			}
-		} catch (Exception e){
-			System.err.println(e.getMessage());
+		esql.out.println("Education: ");
+		if(profile.education.isEmpty()){
+			esql.out.println("None\n");
+		} else{
+			UserProfile.printRows(esql.out, profile.education);
+			esql.out.println();
 		}
 	}
 	
@@ -1298,93 +3468,44 @@ class Profile{
 	*
 	**************************************/
 	public static void ViewUserProfile(ProfNetwork esql, String currentUser, String usrName){
-		System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
 		boolean connection = false;
-		List<List<String>> result = new ArrayList<List<String>>();
-		String query = String.format("SELECT connectionid AS userid FROM connection_usr WHERE userid = '"+usrName+"' AND connectionid = '"+currentUser+"' AND status = 'Accept' UNION ALL SELECT userid FROM connection_usr WHERE userid = '"+currentUser+"' AND connectionid = '"+usrName+"' AND status = 'Accept'");
 		try{
-			if(esql.executeQuery(query) > 0){
+			UserProfile profile = ProfNetwork.getProfileCache().get(esql, usrName);
+			if(esql.getConnectionGraph().isConnected(currentUser, usrName)){
 				connection = true;
-				query = String.format("SELECT name, date_of_birth FROM usr WHERE userid = '"+usrName+"'");
-				try{
-					result = esql.executeQueryAndReturnResult(query);
-					System.out.println("Name: "+result.get(0).get(0)+"");
-					System.out.println("Date of Birth: "+result.get(0).get(1)+"\n");
-				} catch (Exception e){
-					System.err.println(e.getMessage());
-				}
+				esql.out.println("Name: "+profile.name+"");
+				esql.out.println("Date of Birth: "+profile.dateOfBirth+"\n");
 			} else{
-				System.out.println("Userid: "+usrName+"");
-			}
-		} catch (Exception e){
-			System.err.println(e.getMessage());
-		}
-		result.clear();
-		query = String.format("SELECT company, role, location, start_date, end_date FROM work_expr WHERE userid = '"+currentUser+"'");
-		int count = 1;
-		try{
-			// prints out work details
-			System.out.println("Work Experience: ");
-			result = esql.executeQueryAndReturnResult(query);
-			if(result.isEmpty()){
-				System.out.println("None");
-			} else{
-				for(int i = 0; i < result.size(); i++){
-					System.out.print("\t "+count+". ");
-					for(int j = 0; j < result.get(i).size(); j++){	
-						System.out.print(""+result.get(i).get(j)+"");
-						System.out.print(" ");
-					}
-					System.out.println();
-					count++;
-				}
-				System.out.println();
+				esql.out.println("Userid: "+usrName+"");
 			}
-		} catch (Exception e){
-			System.err.println(e.getMessage());
-		}
-		count = 1;
-		result.clear();
-		query = String.format("SELECT institution_name, major, degree, start_date, end_date FROM educational_details WHERE userid = '"+currentUser+"'");
-		try{
-			// prints out education details
-			System.out.println("Education: ");
-			result = esql.executeQueryAndReturnResult(query);
-			if(result.isEmpty()){
-				System.out.println("None\n");
-			} else{
-				for(int i = 0; i < result.size(); i++){
-					System.out.print("\t "+count+". "); 
-					for(int j = 0; j < result.get(i).size(); j++){
-						System.out.print(""+result.get(i).get(j)+"");
-						System.out.print(" ");
-					}
-					count++;
-					System.out.println();
-				}
-				System.out.println();
+			int mutual = esql.getConnectionGraph().mutualCount(currentUser, usrName);
+			if(mutual > 0){
+				esql.out.println(""+mutual+" mutual connection" + (mutual == 1 ? "" : "s") + "\n");
 			}
+			PrintWorkAndEducation(esql, profile);
 		} catch (Exception e){
 			System.err.println(e.getMessage());
 		}
 		boolean getChoice = true;
 		while(getChoice){
-			System.out.println("Profile View Options");
-			System.out.println("---------");
-			System.out.println("1. View profile connections");
-			System.out.println("2. Send Message");
-			query = String.format("SELECT * FROM %s WHERE userid = '"+usrName+"'", "\""+currentUser+"\"");
+			esql.out.println("Profile View Options");
+			esql.out.println("---------");
+			esql.out.println("1. View profile connections");
+			esql.out.println("2. Send Message");
 			boolean connReq = false;
 			try{
-				if(esql.executeQuery(query) > 0){
-					System.out.println("3. Send connection request");
+				// users within 3 levels can be asked, except the ones already connected
+				ConnectionGraph graph = esql.getConnectionGraph();
+				if(!graph.isConnected(currentUser, usrName) && graph.withinDepth(currentUser, usrName, 3)){
+					esql.out.println("3. Send connection request");
 					connReq = true;
 				}
 			} catch (Exception e){
 				System.err.println(e.getMessage());
 			}
-			System.out.println("---------");
-			System.out.println("9.Return to previous menu\n");
+			esql.out.println("---------");
+			esql.out.println("9.Return to previous menu\n");
 			switch(esql.readChoice()){
 				case 1: ViewUserConnections(esql, currentUser, usrName, connection); break;
 				case 2: msg.SendMessageProfile(esql, currentUser, usrName); break;
@@ -1392,7 +3513,7 @@ class Profile{
 							conn.ProfileRequest(esql, currentUser, usrName);
 						} break;
 				case 9: getChoice = false; break;
-				default: System.out.println("Invalid choice. Please try again.");
+				default: esql.out.println("Invalid choice. Please try again.");
 			}
 		}
 		
@@ -1401,91 +3522,100 @@ class Profile{
 	//The users first chance to enter work experience information
 	public static void AddWorkExp(ProfNetwork esql, String currentUser){
 		try{
-			System.out.print("\tEnter new Company Name: ");
+			esql.out.print("\tEnter new Company Name: ");
          		String companyName = esql.in.readLine();
-			System.out.print("\tEnter new Role: ");
+			esql.out.print("\tEnter new Role: ");
          		String userRole = esql.in.readLine();
-			System.out.print("\tEnter new Location: ");
+			esql.out.print("\tEnter new Location: ");
          		String userLocation = esql.in.readLine();
-			System.out.print("\tEnter new Start Date: ");
+			esql.out.print("\tEnter new Start Date: ");
          		String startDate = esql.in.readLine();
-			System.out.print("\tEnter new End Date: ");
+			esql.out.print("\tEnter new End Date: ");
          		String endDate = esql.in.readLine();
 			
-			String query = String.format("INSERT INTO work_expr (userId, company, role, location, start_date, end_date) VALUES('%s', '%s', '%s', '%s', '%s', '%s')",currentUser, companyName, userRole, userLocation, startDate, endDate);
+			String query = "INSERT INTO work_expr (userId, company, role, location, start_date, end_date) VALUES(?, ?, ?, ?, CAST(? AS date), CAST(? AS date))";
 
-			esql.executeUpdate(query);
+			if (esql.executeUpdate(query, currentUser, companyName, userRole, userLocation, startDate, endDate) > 0){
+				ProfileChanged(esql, currentUser, true);
+			}
 		}catch (Exception e){
 			System.err.println(e.getMessage());
 			}
 	}
 
-	// Allows the user to update their work experience after they have already entered information before
+	/*********************************************
+	* Method Name: UpdateWorkExp
+	* Purpose: Edit session for the user's work
+	* experience. Changes are kept in memory until
+	* the user saves, then every changed entry is
+	* written with one update keyed by its primary
+	* key, all of them in a single transaction.
+	*
+	* Input: ProfNetwork object
+	*		 String object
+	*
+	* Output: None
+	*
+	**********************************************/
 	public static void UpdateWorkExp(ProfNetwork esql, String currentUser){
-		String companyName;
-		String userRole;
-		String userLocation;
-		String startDate;
-		String endDate;
 		try{
-			String testQuery = String.format("SELECT company, role FROM work_expr WHERE userId = '%s'",currentUser);
-			List<List<String>> result  = new ArrayList<List<String>>();
-			result = esql.executeQueryAndReturnResult(testQuery);
-			if (result.isEmpty()){
-				System.out.println("You need to go back to the previous menu and Add Work Experience before you can update it.");
-			}
-			else{
-				boolean keepon = true;
-				System.out.println("\tEnter the company name of the entry you wish to update");
-				companyName = esql.in.readLine();
-				System.out.println("\tEnter the role of the entry you wish to update");
-				userRole = esql.in.readLine();
-				System.out.println("\tEnter the start date of the entry you wish to update");
-				startDate = esql.in.readLine();
-
-				while (keepon){
-					
+			String query = "SELECT company, role, location, start_date, end_date FROM work_expr WHERE userId = ? ORDER BY start_date";
+			List<List<String>> entries = esql.executeQueryAndReturnResult(query, currentUser);
+			if (entries.isEmpty()){
+				esql.out.println("You need to go back to the previous menu and Add Work Experience before you can update it.");
+				return;
+			}
+			boolean[] changed = new boolean[entries.size()];
+			boolean keepon = true;
+			while (keepon){
+				esql.out.println("UPDATE WORK EXPERIENCE");
+				esql.out.println("----------");
+				for (int i = 0; i < entries.size(); i++){
+					List<String> entry = entries.get(i);
+					esql.out.println((changed[i] ? "*" : " ") + (i + 1) + ". " + entry.get(0) + ", " + entry.get(1)
+						+ ", " + Text(entry.get(2)) + ", " + entry.get(3) + " to " + Text(entry.get(4)));
+				}
+				esql.out.println("----------");
+				esql.out.println("1. Update Location");
+				esql.out.println("2. Update End Date");
+				esql.out.println("3. Save Changes");
+				esql.out.println("9. Quit Without Saving");
 
-					System.out.println("UPDATE WORK EXPERIENCE");
-					System.out.println("----------");
-				//	System.out.println("1. Update Company Name");
-				//	System.out.println("2. Update Role");
-					System.out.println("1. Update Location");
-				//	System.out.println("4. Update Start Date");
-					System.out.println("2. Update End Date");
-					System.out.println("9. Quit Updating Work Experience");
-
-					switch (esql.readChoice()){
-						/*case 1: 
-							System.out.print("\tEnter new Company Name: ");
-         						companyName = esql.in.readLine();
-							String query1 = String.format("UPDATE work_expr set company = '%s' WHERE userId = '"+currentUser+"'",companyName);
-							esql.executeUpdate(query1); break;
-						case 2: 
-							System.out.print("\tEnter new Role: ");
-         						userRole = esql.in.readLine();
-							String query2 = String.format("UPDATE work_expr set role = '%s' WHERE userId = '"+currentUser+"'",userRole);
-							esql.executeUpdate(query2); break;*/
-						case 1:
-							System.out.print("\tEnter new Location: ");
-         						userLocation = esql.in.readLine();
-							String query3 = String.format("UPDATE work_expr set location = '%s' WHERE userId = '"+currentUser+"' AND company = '%s' AND role = '%s' AND start_date = '%s'",userLocation, companyName, userRole, startDate);
-							esql.executeUpdate(query3); break;
-						/*case 4:
-							System.out.print("\tEnter new Start Date: ");
-         						startDate = esql.in.readLine();
-							String query4 = String.format("UPDATE work_expr set start_date = '%s' WHERE userId = '"+currentUser+"'",startDate);
-							esql.executeUpdate(query4); break;*/
-						case 2:
-							System.out.print("\tEnter new End Date: ");
-         						endDate = esql.in.readLine();
-							String query5 = String.format("UPDATE work_expr set end_date = '%s' WHERE userId = '"+currentUser+"'AND company = '%s' AND role = '%s' AND start_date = '%s'",endDate, companyName, userRole, startDate);
-							esql.executeUpdate(query5); break;
-						case 9: 
-							keepon = false; break;
-						default: 	
-							System.out.println("Invalid choice. Please try again.");
-					}
+				int entry;
+				switch (esql.readChoice()){
+					case 1:
+						entry = ReadEntry(esql, entries.size());
+						if (entry >= 0){
+							esql.out.print("\tEnter new Location: ");
+							entries.get(entry).set(2, Blank(esql.in.readLine()));
+							changed[entry] = true;
+						}
+						break;
+					case 2:
+						entry = ReadEntry(esql, entries.size());
+						if (entry >= 0){
+							esql.out.print("\tEnter new End Date: ");
+							entries.get(entry).set(4, Blank(esql.in.readLine()));
+							changed[entry] = true;
+						}
+						break;
+					case 3:
+						List<Object[]> updates = new ArrayList<Object[]>();
+						List<String> labels = new ArrayList<String>();
+						for (int i = 0; i < entries.size(); i++){
+							if (changed[i]){
+								List<String> row = entries.get(i);
+								updates.add(new Object[]{ row.get(2), row.get(4), currentUser, row.get(0), row.get(1), row.get(3) });
+								labels.add(row.get(0) + ", " + row.get(1));
+							}
+						}
+						String update = "UPDATE work_expr SET location = ?, end_date = CAST(? AS date) WHERE userId = ? AND company = ? AND role = ? AND start_date = CAST(? AS date)";
+						keepon = !SaveEntries(esql, currentUser, update, updates, labels);
+						break;
+					case 9: 
+						keepon = false; break;
+					default: 	
+						esql.out.println("Invalid choice. Please try again.");
 				}
 			}
 		}catch (Exception e){
@@ -1494,6 +3624,61 @@ class Profile{
 		
 	}
 
+	// asks which of the listed entries to edit, returns its index or -1
+	private static int ReadEntry(ProfNetwork esql, int count) throws IOException{
+		esql.out.print("\tEnter the number of the entry: ");
+		try{
+			int entry = Integer.parseInt(esql.in.readLine().trim());
+			if (entry >= 1 && entry <= count){
+				return entry - 1;
+			}
+		} catch (NumberFormatException e){
+			// reported below
+		}
+		esql.out.println("There is no entry with that number.");
+		return -1;
+	}
+
+	/*
+	 * Writes the changed entries of an edit session in one transaction.
+	 * Returns false and keeps the session open when the save failed, in
+	 * which case nothing was written. An entry whose key matched no row,
+	 * because it was changed or deleted since it was listed, is reported
+	 * by its label and not counted as saved. The profile of the user is
+	 * only dropped from the cache when at least one entry was saved.
+	 **/
+	private static boolean SaveEntries(ProfNetwork esql, String currentUser, String update, List<Object[]> rows, List<String> labels){
+		try{
+			int[] counts = esql.executeBatchCounts(update, rows);
+			int saved = 0;
+			for (int i = 0; i < counts.length; i++){
+				if (counts[i] == 0){
+					esql.out.println("\"" + labels.get(i) + "\" no longer exists and was not saved.");
+				} else{
+					saved++;
+				}
+			}
+			esql.out.println(saved + (saved == 1 ? " entry" : " entries") + " saved.");
+			if (saved > 0){
+				ProfileChanged(esql, currentUser, true);
+			}
+			return true;
+		} catch (SQLException e){
+			System.err.println(e.getMessage());
+			esql.out.println("Nothing was saved, please check the values and try again.");
+			return false;
+		}
+	}
+
+	// an empty answer clears the field
+	private static String Blank(String value){
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	private static String Text(String value){
+		return value == null ? "-" : value;
+	}
+
 	//deletes all of the users work experience information
 
 	// add some code to tell user that the touple they are trying
@@ -1502,22 +3687,24 @@ class Profile{
 		try{
 			boolean loop = true;
 		
-			System.out.println("\tEnter the company name of the entry you wish to delete");
+			esql.out.println("\tEnter the company name of the entry you wish to delete");
 			String companyName = esql.in.readLine();
-			System.out.println("\tEnter the role of the entry you wish to delete");
+			esql.out.println("\tEnter the role of the entry you wish to delete");
 			String userRole = esql.in.readLine();
-			System.out.println("\tEnter the start date of the entry you wish to delete");
+			esql.out.println("\tEnter the start date of the entry you wish to delete");
 			String startDate = esql.in.readLine();
 
-			System.out.println("Press 1 if you are sure you want to delete this Work Experience");
-			System.out.println("Press 2 if you want to stop deleting");
+			esql.out.println("Press 1 if you are sure you want to delete this Work Experience");
+			esql.out.println("Press 2 if you want to stop deleting");
 			int choice = esql.readChoice();
 
 
 			while (loop){
 				if (choice == 1){
-					String query = String.format("DELETE FROM work_expr WHERE userId = '%s' AND company = '%s' AND role = '%s' AND start_date = '%s'", currentUser, companyName, userRole, startDate);
-					esql.executeUpdate(query);
+					String query = "DELETE FROM work_expr WHERE userId = ? AND company = ? AND role = ? AND start_date = CAST(? AS date)";
+					if (esql.executeUpdate(query, currentUser, companyName, userRole, startDate) > 0){
+						ProfileChanged(esql, currentUser, true);
+					}
 					loop = false;
 				}
 				
@@ -1525,7 +3712,7 @@ class Profile{
 					loop = false;
 				}
 				else{
-					System.out.println("Wrong entry. Please enter a 1 or 2.");
+					esql.out.println("Wrong entry. Please enter a 1 or 2.");
 					choice = esql.readChoice();
 				}
 			}
@@ -1538,86 +3725,110 @@ class Profile{
 	//allows the user to initially fill out their school related information
 	public static void AddSchool(ProfNetwork esql, String currentUser){
 		try{
-			System.out.print("\tEnter new Institution Name: ");
+			esql.out.print("\tEnter new Institution Name: ");
          		String schoolName = esql.in.readLine();
-			System.out.print("\tEnter new Major: ");
+			esql.out.print("\tEnter new Major: ");
          		String userMajor = esql.in.readLine();
-			System.out.print("\tEnter new Degree: ");
+			esql.out.print("\tEnter new Degree: ");
          		String userDegree = esql.in.readLine();
-			System.out.print("\tEnter new Start Date: ");
+			esql.out.print("\tEnter new Start Date: ");
          		String startDate = esql.in.readLine();
-			System.out.print("\tEnter new End Date: ");
+			esql.out.print("\tEnter new End Date: ");
          		String endDate = esql.in.readLine();
 			
-			String query = String.format("INSERT INTO educational_details (userid, institution_name, major, degree, start_date, end_date) VALUES('%s', '%s', '%s', '%s', '%s', '%s')",currentUser, schoolName, userMajor, userDegree, startDate, endDate);
-			esql.executeUpdate(query);
+			String query = "INSERT INTO educational_details (userid, institution_name, major, degree, start_date, end_date) VALUES(?, ?, ?, ?, CAST(? AS date), CAST(? AS date))";
+			if (esql.executeUpdate(query, currentUser, schoolName, userMajor, userDegree, startDate, endDate) > 0){
+				ProfileChanged(esql, currentUser, true);
+			}
 		}catch (Exception e){
 			System.err.println(e.getMessage());
 			}
 	}
 	
-	//allows the user to edit school information after previously entering some information
+	/*********************************************
+	* Method Name: UpdateSchool
+	* Purpose: Edit session for the user's education
+	* details, saved the same way as UpdateWorkExp
+	*
+	* Input: ProfNetwork object
+	*		 String object
+	*
+	* Output: None
+	*
+	**********************************************/
 	public static void UpdateSchool(ProfNetwork esql, String currentUser){
-		String schoolName;
-		String userMajor;
-		String userDegree;
-		String startDate;
-		String endDate;
 		try{
-			String testQuery = String.format("SELECT institution_name, major FROM educational_details WHERE userid = '%s'",currentUser);
-			List<List<String>> result  = new ArrayList<List<String>>();
-			result = esql.executeQueryAndReturnResult(testQuery);
-			if (result.isEmpty()){
-				System.out.println("You need to go back to the previous menu and Add Education Details before you can update it.");
-			}
-			else{
-				boolean keepon = true;
-				System.out.println("\tEnter the major of the entry you wish to update");
-				userMajor = esql.in.readLine();
-				System.out.println("\tEnter the degree type of the entry you wish to update");
-				userDegree = esql.in.readLine();
-
-				while (keepon){
-					System.out.println("UPDATE EDUCATION MENU");
-					System.out.println("----------");
-					System.out.println("1. Update Institution Name");
-				//	System.out.println("2. Update Major");
-				//	System.out.println("3. Update Degree");
-					System.out.println("2. Update Start Date");
-					System.out.println("3. Update End Date");
-					System.out.println("9. Quit Updating Education Information");
-	
-					switch (esql.readChoice()){
-						case 1: 
-							System.out.print("\tEnter new Institution Name: ");
-         						schoolName = esql.in.readLine();
-							String query1 = String.format("UPDATE educational_details set institution_name = '%s' WHERE userid = '"+currentUser+"' AND major = '%s' AND degree = '%s'",schoolName, userMajor, userDegree);
-							esql.executeUpdate(query1); break;
-					/*	case 2: 
-							System.out.print("\tEnter new major: ");
-         						userMajor = esql.in.readLine();
-							String query2 = String.format("UPDATE educational_details set major = '%s' WHERE userid = '"+currentUser+"'",userMajor);
-							esql.executeUpdate(query2); break;
-						case 3:
-							System.out.print("\tEnter new degree: ");
-         						userDegree = esql.in.readLine();
-							String query3 = String.format("UPDATE educational_details set degree = '%s' WHERE userid = '"+currentUser+"'",userDegree);
-							esql.executeUpdate(query3); break;*/
-						case 2:
-							System.out.print("\tEnter new start Date: ");
-         						startDate = esql.in.readLine();
-							String query4 = String.format("UPDATE educational_details set start_date = '%s' WHERE userid = '"+currentUser+"'AND major = '%s' AND degree = '%s'",startDate, userMajor, userDegree);
-							esql.executeUpdate(query4); break;
-						case 3:
-							System.out.print("\tEnter new end Date: ");
-         						endDate = esql.in.readLine();
-							String query5 = String.format("UPDATE educational_details set end_date = '%s' WHERE userid = '"+currentUser+"'AND major = '%s' AND degree = '%s'",endDate, userMajor, userDegree);
-							esql.executeUpdate(query5); break;
-						case 9: 
-							keepon = false; break;
-						default: 	
-							System.out.println("Invalid choice. Please try again.");
-					}
+			String query = "SELECT institution_name, major, degree, start_date, end_date FROM educational_details WHERE userid = ? ORDER BY start_date";
+			List<List<String>> entries = esql.executeQueryAndReturnResult(query, currentUser);
+			if (entries.isEmpty()){
+				esql.out.println("You need to go back to the previous menu and Add Education Details before you can update it.");
+				return;
+			}
+			boolean[] changed = new boolean[entries.size()];
+			boolean keepon = true;
+			while (keepon){
+				esql.out.println("UPDATE EDUCATION MENU");
+				esql.out.println("----------");
+				for (int i = 0; i < entries.size(); i++){
+					List<String> entry = entries.get(i);
+					esql.out.println((changed[i] ? "*" : " ") + (i + 1) + ". " + entry.get(0) + ", " + entry.get(2)
+						+ " in " + entry.get(1) + ", " + Text(entry.get(3)) + " to " + Text(entry.get(4)));
+				}
+				esql.out.println("----------");
+				esql.out.println("1. Update Institution Name");
+				esql.out.println("2. Update Start Date");
+				esql.out.println("3. Update End Date");
+				esql.out.println("4. Save Changes");
+				esql.out.println("9. Quit Without Saving");
+
+				int entry;
+				switch (esql.readChoice()){
+					case 1: 
+						entry = ReadEntry(esql, entries.size());
+						if (entry >= 0){
+							esql.out.print("\tEnter new Institution Name: ");
+							String schoolName = esql.in.readLine().trim();
+							if (schoolName.isEmpty()){
+								esql.out.println("The institution name can not be empty.");
+							} else {
+								entries.get(entry).set(0, schoolName);
+								changed[entry] = true;
+							}
+						}
+						break;
+					case 2:
+						entry = ReadEntry(esql, entries.size());
+						if (entry >= 0){
+							esql.out.print("\tEnter new start Date: ");
+							entries.get(entry).set(3, Blank(esql.in.readLine()));
+							changed[entry] = true;
+						}
+						break;
+					case 3:
+						entry = ReadEntry(esql, entries.size());
+						if (entry >= 0){
+							esql.out.print("\tEnter new end Date: ");
+							entries.get(entry).set(4, Blank(esql.in.readLine()));
+							changed[entry] = true;
+						}
+						break;
+					case 4:
+						List<Object[]> updates = new ArrayList<Object[]>();
+						List<String> labels = new ArrayList<String>();
+						for (int i = 0; i < entries.size(); i++){
+							if (changed[i]){
+								List<String> row = entries.get(i);
+								updates.add(new Object[]{ row.get(0), row.get(3), row.get(4), currentUser, row.get(1), row.get(2) });
+								labels.add(row.get(2) + ", " + row.get(1));
+							}
+						}
+						String update = "UPDATE educational_details SET institution_name = ?, start_date = CAST(? AS date), end_date = CAST(? AS date) WHERE userid = ? AND major = ? AND degree = ?";
+						keepon = !SaveEntries(esql, currentUser, update, updates, labels);
+						break;
+					case 9: 
+						keepon = false; break;
+					default: 	
+						esql.out.println("Invalid choice. Please try again.");
 				}
 			}
 		}catch (Exception e){
@@ -1630,26 +3841,28 @@ class Profile{
 	public static void DeleteSchool(ProfNetwork esql, String currentUser){
 		try{
 			boolean loop = true;
-			System.out.println("\tEnter the major of the entry you wish to delete");
+			esql.out.println("\tEnter the major of the entry you wish to delete");
 			String userMajor = esql.in.readLine();
-			System.out.println("\tEnter the degree of the entry you wish to delete");
+			esql.out.println("\tEnter the degree of the entry you wish to delete");
 			String userDegree = esql.in.readLine();
 
-			System.out.println("Are you sure you want to delete your stored school information?");
-			System.out.println("Press 1 if yes");
-			System.out.println("Press 2 if no");
+			esql.out.println("Are you sure you want to delete your stored school information?");
+			esql.out.println("Press 1 if yes");
+			esql.out.println("Press 2 if no");
 			int choice = esql.readChoice();
 			while (loop){
 				if (choice == 1){
-					String query = 	String.format("DELETE FROM educational_details WHERE userid = '%s' AND major = '%s' AND degree = '%s'", currentUser, userMajor, userDegree);
-					esql.executeUpdate(query);
+					String query = "DELETE FROM educational_details WHERE userid = ? AND major = ? AND degree = ?";
+					if (esql.executeUpdate(query, currentUser, userMajor, userDegree) > 0){
+						ProfileChanged(esql, currentUser, true);
+					}
 					loop = false;
 				}
 				else if (choice == 2){ // do nothing and just let the function exit
 					loop = false;
 				}
 				else{
-					System.out.println("Wrong entry. Please enter a 1 or 2.");
+					esql.out.println("Wrong entry. Please enter a 1 or 2.");
 					choice = esql.readChoice();
 				}
 			}
@@ -1660,42 +3873,42 @@ class Profile{
 	
 	// no limit how far but to send connection will only be available to valid users
 	public static void ViewUserConnections(ProfNetwork esql, String currentUser, String usrName, boolean connection){
-		String query = String.format("SELECT connectionid AS userid FROM connection_usr WHERE userid = '"+usrName+"' AND connectionid <> '"+currentUser+"' AND status = 'Accept' UNION ALL SELECT userid FROM connection_usr WHERE  userid <> '"+currentUser+"' AND connectionid = '"+usrName+"' AND status = 'Accept'");
+		String query = "SELECT connectionid FROM connection_edge WHERE userid = ? AND connectionid <> ?";
 		List<List<String>> result = new ArrayList<List<String>>();
 		try{
-			result = esql.executeQueryAndReturnResult(query);
+			result = esql.executeQueryAndReturnResult(query, usrName, currentUser);
 		} catch (Exception e){
 			System.err.println(e.getMessage());
 		}
 		
 		boolean getChoice = true;
-		System.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
+		esql.out.println("\f\f\f\f\f\f\f\f\f\f\f\f\f\f");
 		while(getChoice){
-			System.out.println(""+usrName+"'s connection list:");
+			esql.out.println(""+usrName+"'s connection list:");
 			int count = 1;
 			int usrChoice = 0;
 			if(result.size() > 0){
 				for(int i = 0; i < result.size(); i++){
-					System.out.println(""+count+". " + ""+result.get(i).get(0)+"");
+					esql.out.println(""+count+". " + ""+result.get(i).get(0)+"");
 					count++;
 				}
 			} else{
-				System.out.println("Only has you as a connection.");
+				esql.out.println("Only has you as a connection.");
 			}
-			System.out.println();
-			System.out.println("\n1. View connection profile");
-			System.out.println("2. Send message");
-			System.out.println("---------");
-			System.out.println("9. Return to previous menu\n");
+			esql.out.println();
+			esql.out.println("\n1. View connection profile");
+			esql.out.println("2. Send message");
+			esql.out.println("---------");
+			esql.out.println("9. Return to previous menu\n");
 			switch(esql.readChoice()){
-				case 1: System.out.print("Please enter the number of the connection you want to view: ");
+				case 1: esql.out.print("Please enter the number of the connection you want to view: ");
 						try{
 							usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
 						} catch (Exception e){
 							System.err.println(e.getMessage());
 						}
 						ViewUserProfile(esql, currentUser, result.get(usrChoice).get(0)); break;
-				case 2: System.out.print("Please enter the number of the connection you want to send a message: ");
+				case 2: esql.out.print("Please enter the number of the connection you want to send a message: ");
 						try{
 							usrChoice = Integer.parseInt(esql.in.readLine().trim()) - 1;
 						} catch (Exception e){
@@ -1703,7 +3916,7 @@ class Profile{
 						}
 						msg.SendMessageProfile(esql, currentUser, result.get(usrChoice).get(0)); break;
 				case 9: getChoice = false; break;
-				default: System.out.println("Invalid choice. Please try again.");
+				default: esql.out.println("Invalid choice. Please try again.");
 						 try{
 							 String errCtch = esql.in.readLine();
 						 } catch (Exception e){
@@ -1716,10 +3929,10 @@ class Profile{
 	public static void UpdatePassword(ProfNetwork esql, String currentUser){
 		String password;
 		try{
-			System.out.print("\tEnter new password: ");
+			esql.out.print("\tEnter new password: ");
          		password = esql.in.readLine();
-			String query = String.format("UPDATE usr set password = '%s' WHERE userid = '"+currentUser+"'",password);
-			esql.executeUpdate(query);
+			String query = "UPDATE usr set password = ? WHERE userid = ?";
+			esql.executeUpdate(query, password, currentUser);
 		}catch (Exception e){
 			System.err.println(e.getMessage());
 			}
@@ -1729,10 +3942,14 @@ class Profile{
 	public static void UpdateFullName(ProfNetwork esql, String currentUser){
 		String fullName;
 		try{
-			System.out.print("\tEnter new Full Name: ");
+			esql.out.print("\tEnter new Full Name: ");
          		fullName = esql.in.readLine();
-			String query = String.format("UPDATE usr set name = '%s' WHERE userid = '"+currentUser+"'",fullName);
-			esql.executeUpdate(query);
+			String query = "UPDATE usr set name = ? WHERE userid = ?";
+			if (esql.executeUpdate(query, fullName, currentUser) > 0){
+				ProfileChanged(esql, currentUser, false);
+			}
+			// the old name keeps suggesting this user too, which is harmless
+			esql.getUserDirectory().add(currentUser, fullName);
 		}catch (Exception e){
 			System.err.println(e.getMessage());
 			}
@@ -1743,10 +3960,12 @@ class Profile{
 	public static void UpdateDateofBirth(ProfNetwork esql,String currentUser){
 		String dateofBirth;
 		try{
-			System.out.print("\tEnter new Date of Birth: ");
+			esql.out.print("\tEnter new Date of Birth: ");
          		dateofBirth = esql.in.readLine();
-			String query = String.format("UPDATE usr set date_of_birth = '%s' WHERE userid = '"+currentUser+"'",dateofBirth);
-			esql.executeUpdate(query);
+			String query = "UPDATE usr set date_of_birth = CAST(? AS date) WHERE userid = ?";
+			if (esql.executeUpdate(query, dateofBirth, currentUser) > 0){
+				ProfileChanged(esql, currentUser, false);
+			}
 		}catch (Exception e){
 			System.err.println(e.getMessage());
 			}
@@ -1757,12 +3976,232 @@ class Profile{
 	public static void UpdateEmail(ProfNetwork esql, String currentUser){
 		String email;
 		try{
-			System.out.print("\tEnter new email: ");
+			esql.out.print("\tEnter new email: ");
          		email = esql.in.readLine();
-			String query = String.format("UPDATE usr set email = '%s' WHERE userid = '"+currentUser+"'",email);
-			esql.executeUpdate(query);
+			String query = "UPDATE usr set email = ? WHERE userid = ?";
+			if (esql.executeUpdate(query, email, currentUser) > 0){
+				ProfileChanged(esql, currentUser, false);
+			}
 		}catch (Exception e){
 			System.err.println(e.getMessage());
 		}
 	}
 } //end Profile
+
+/**************************************************
+* Recommender class
+* Purpose: People you may know. Every user 2 levels
+*		   away is scored by mutual connections and
+*		   by the companies and schools shared with
+*		   the user, and the best TOP_K are kept with
+*		   a bounded heap. The server works the lists
+*		   out for everybody on a background thread. A
+*		   new connection or a profile change only drops
+*		   the lists that it can change; they are worked
+*		   out again the next time they are asked for.
+*		   Every drop moves the version of the user on,
+*		   so a list worked out before it is never kept.
+*
+**************************************************/
+class Recommender{
+	public static final int TOP_K = 10;
+	public static final int MUTUAL_WEIGHT = 1;
+	public static final int COMPANY_WEIGHT = 2;
+	public static final int SCHOOL_WEIGHT = 2;
+
+	private static final Set<String> NONE = Collections.emptySet();
+
+	private final ConnectionGraph graph;
+	private final ConcurrentHashMap<String, Set<String>> companies = new ConcurrentHashMap<String, Set<String>>();
+	private final ConcurrentHashMap<String, Set<String>> schools = new ConcurrentHashMap<String, Set<String>>();
+	private final ConcurrentHashMap<String, List<Suggestion>> lists = new ConcurrentHashMap<String, List<Suggestion>>();
+	// moved on every time the list of the user is dropped
+	private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+	private Recommender(ConnectionGraph graph){
+		this.graph = graph;
+	}
+
+	/*********************************************
+	* Method Name: load
+	* Purpose: Reads the company and school of every
+	* work and education row
+	*
+	* Input: ProfNetwork object, ConnectionGraph
+	*
+	* Output: Recommender object
+	*
+	**********************************************/
+	public static Recommender load(ProfNetwork esql, ConnectionGraph graph) throws SQLException{
+		final Recommender recommender = new Recommender(graph);
+		esql.executeQueryAndStream("SELECT userid, company FROM work_expr", new RowHandler(){
+			public void row(ResultSet rs) throws SQLException{
+				add(recommender.companies, rs.getString(1).trim(), rs.getString(2).trim());
+			}
+		});
+		esql.executeQueryAndStream("SELECT userid, institution_name FROM educational_details", new RowHandler(){
+			public void row(ResultSet rs) throws SQLException{
+				add(recommender.schools, rs.getString(1).trim(), rs.getString(2).trim());
+			}
+		});
+		return recommender;
+	}
+
+	/* works out the list of every user on a background thread, the server does this once at start */
+	public void precomputeAll(){
+		Thread batch = new Thread(new Runnable(){
+			public void run(){
+				for(String userId : graph.users()){
+					if(!lists.containsKey(userId)){
+						keep(userId);
+					}
+				}
+			}
+		}, "recommender-batch");
+		batch.setDaemon(true);
+		batch.start();
+	}
+
+	/* the best suggestions for the user, best first */
+	public List<Suggestion> suggestions(String userId){
+		List<Suggestion> list = lists.get(userId);
+		return list == null ? keep(userId) : list;
+	}
+
+	/* a new connection only changes the lists of the two users and their connections */
+	public void connectionAdded(String userA, String userB){
+		for(String userId : graph.usersWithin(userA, 1)){
+			drop(userId);
+		}
+		for(String userId : graph.usersWithin(userB, 1)){
+			drop(userId);
+		}
+	}
+
+	/* reads the companies and schools of the user again, they can be on the lists of users 2 levels away */
+	public void profileChanged(ProfNetwork esql, String userId) throws SQLException{
+		companies.put(userId, read(esql, "SELECT company FROM work_expr WHERE userid = ?", userId));
+		schools.put(userId, read(esql, "SELECT institution_name FROM educational_details WHERE userid = ?", userId));
+		for(String other : graph.usersWithin(userId, 2)){
+			drop(other);
+		}
+	}
+
+	/* works the list out and keeps it, unless it was dropped while it was being worked out */
+	private List<Suggestion> keep(String userId){
+		long version = version(userId).get();
+		List<Suggestion> list = compute(userId);
+		lists.put(userId, list);
+		// a drop that came in between moved the version on before it removed, so take the list back out
+		if(version(userId).get() != version){
+			lists.remove(userId, list);
+		}
+		return list;
+	}
+
+	private void drop(String userId){
+		version(userId).incrementAndGet();
+		lists.remove(userId);
+	}
+
+	private AtomicLong version(String userId){
+		AtomicLong version = versions.get(userId);
+		if(version == null){
+			AtomicLong fresh = new AtomicLong();
+			version = versions.putIfAbsent(userId, fresh);
+			if(version == null){
+				version = fresh;
+			}
+		}
+		return version;
+	}
+
+	private List<Suggestion> compute(String userId){
+		Set<String> myCompanies = get(companies, userId);
+		Set<String> mySchools = get(schools, userId);
+		// the heap holds the best TOP_K so far with the worst on top
+		PriorityQueue<Suggestion> best = new PriorityQueue<Suggestion>(TOP_K + 1);
+		for(Map.Entry<String, Integer> candidate : graph.secondLevel(userId).entrySet()){
+			Suggestion suggestion = new Suggestion(candidate.getKey(), candidate.getValue(),
+				shared(myCompanies, get(companies, candidate.getKey())),
+				shared(mySchools, get(schools, candidate.getKey())));
+			if(best.size() < TOP_K){
+				best.add(suggestion);
+			} else if(suggestion.compareTo(best.peek()) > 0){
+				best.poll();
+				best.add(suggestion);
+			}
+		}
+		List<Suggestion> list = new ArrayList<Suggestion>(best);
+		Collections.sort(list, Collections.reverseOrder());
+		return Collections.unmodifiableList(list);
+	}
+
+	private static void add(Map<String, Set<String>> map, String userId, String value){
+		Set<String> values = map.get(userId);
+		if(values == null){
+			values = new HashSet<String>();
+			map.put(userId, values);
+		}
+		values.add(value);
+	}
+
+	private static Set<String> get(Map<String, Set<String>> map, String userId){
+		Set<String> values = map.get(userId);
+		return values == null ? NONE : values;
+	}
+
+	private static int shared(Set<String> mine, Set<String> theirs){
+		int count = 0;
+		for(String value : mine){
+			if(theirs.contains(value)){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static Set<String> read(ProfNetwork esql, String query, String userId) throws SQLException{
+		Set<String> values = new HashSet<String>();
+		for(List<String> row : esql.executeQueryAndReturnResult(query, userId)){
+			values.add(row.get(0).trim());
+		}
+		return values;
+	}
+
+	/* one suggested user and why */
+	static class Suggestion implements Comparable<Suggestion>{
+		final String userId;
+		final int mutual;
+		final int companies;
+		final int schools;
+		final int score;
+
+		Suggestion(String userId, int mutual, int companies, int schools){
+			this.userId = userId;
+			this.mutual = mutual;
+			this.companies = companies;
+			this.schools = schools;
+			this.score = mutual * MUTUAL_WEIGHT + companies * COMPANY_WEIGHT + schools * SCHOOL_WEIGHT;
+		}
+
+		/* higher score first, then userid so the order is stable */
+		public int compareTo(Suggestion other){
+			if(score != other.score){
+				return score < other.score ? -1 : 1;
+			}
+			return other.userId.compareTo(userId);
+		}
+
+		public String toString(){
+			String text = userId + " - " + mutual + " mutual connection" + (mutual == 1 ? "" : "s");
+			if(companies > 0){
+				text += ", " + companies + " shared compan" + (companies == 1 ? "y" : "ies");
+			}
+			if(schools > 0){
+				text += ", " + schools + " shared school" + (schools == 1 ? "" : "s");
+			}
+			return text;
+		}
+	}
+} // end Recommender
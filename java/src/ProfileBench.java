@@ -0,0 +1,91 @@
+/*
+ * Profile read benchmark
+ * ======================
+ *
+ * Reads the same profiles with the old three query path and with the
+ * single json_agg query of UserProfile.load, and reports the latency
+ * percentiles of each. The profile cache is not used.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+
+/**
+ * Takes <users> user ids from usr and reads each profile <rounds>
+ * times with both paths, one after the other, so both see the same
+ * warm caches on the database side.
+ *
+ */
+public class ProfileBench {
+
+   /**
+    * The main execution method
+    *
+    * @param args <dbname> <port> <user> [<users> [<rounds>]]
+    */
+   public static void main (String[] args) throws Exception {
+      if (args.length < 3 || args.length > 5) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            ProfileBench.class.getName () +
+            " <dbname> <port> <user> [<users> [<rounds>]]");
+         return;
+      }//end if
+      int users = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+      int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+      Class.forName ("org.postgresql.Driver");
+      ProfNetwork esql = new ProfNetwork (args[0], args[1], args[2], "");
+      try{
+         // users with work or education rows, so both paths have something to fold
+         List<String> ids = new ArrayList<String>();
+         for (List<String> row : esql.executeQueryAndReturnResult(
+               "SELECT userid FROM usr WHERE userid IN (SELECT userid FROM work_expr UNION SELECT userid FROM educational_details) ORDER BY userid LIMIT " + users)){
+            ids.add(row.get(0).trim());
+         }//end for
+
+         long[] separate = new long[ids.size() * rounds];
+         long[] single = new long[ids.size() * rounds];
+         int n = 0;
+         for (int round = 0; round < rounds; round++){
+            for (String id : ids){
+               long start = System.nanoTime();
+               UserProfile.loadSeparately(esql, id);
+               separate[n] = System.nanoTime() - start;
+               start = System.nanoTime();
+               UserProfile.load(esql, id);
+               single[n] = System.nanoTime() - start;
+               n++;
+            }//end for
+         }//end for
+
+         System.out.println(String.format("profiles=%d rounds=%d", ids.size(), rounds));
+         report("three queries", separate);
+         report("one json_agg query", single);
+      }finally{
+         esql.cleanup ();
+      }
+   }//end main
+
+   static void report (String label, long[] latencies) {
+      if (latencies.length == 0){
+         return;
+      }
+      Arrays.sort(latencies);
+      System.out.println(String.format("%-20s ms: p50=%.2f p99=%.2f max=%.2f",
+         label, percentile(latencies, 50), percentile(latencies, 99),
+         latencies[latencies.length - 1] / 1e6));
+   }//end report
+
+   static double percentile (long[] sorted, int p) {
+      int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1e6;
+   }//end percentile
+
+}//end ProfileBench
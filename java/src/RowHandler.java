@@ -0,0 +1,9 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+
+
+/* called once per row by ProfNetwork.executeQueryAndStream */
+interface RowHandler{
+	void row(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,158 @@
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+
+/********************************************************
+* UserProfile Class
+* Purpose: One user's account details, work experience
+*		   and education as shown on a profile page.
+*		   Built once and only read after that, so it
+*		   can be shared by every session.
+*
+********************************************************/
+class UserProfile{
+	// one row: the account fields, then the work and education rows as json arrays of arrays
+	private static final String PROFILE_QUERY = "SELECT u.name, u.email, u.date_of_birth, "
+		+ "(SELECT json_agg(json_build_array(w.company, w.role, w.location, w.start_date, w.end_date)) FROM work_expr w WHERE w.userid = u.userid), "
+		+ "(SELECT json_agg(json_build_array(e.institution_name, e.major, e.degree, e.start_date, e.end_date)) FROM educational_details e WHERE e.userid = u.userid) "
+		+ "FROM usr u WHERE u.userid = ?";
+
+	public final String userId;
+	public final String name;
+	public final String email;
+	public final String dateOfBirth;
+	// company, role, location, start_date, end_date
+	public final List<String[]> work;
+	// institution_name, major, degree, start_date, end_date
+	public final List<String[]> education;
+
+	public UserProfile(String userId, String name, String email, String dateOfBirth, List<String[]> work, List<String[]> education){
+		this.userId = userId;
+		this.name = name;
+		this.email = email;
+		this.dateOfBirth = dateOfBirth;
+		this.work = Collections.unmodifiableList(work);
+		this.education = Collections.unmodifiableList(education);
+	}
+
+	/*********************************************
+	* Method Name: load
+	* Purpose: Reads the profile of a user in one
+	* round trip. The work and education rows are
+	* folded into json arrays by the server and
+	* decoded here.
+	*
+	* Input: ProfNetwork object, String userId
+	*
+	* Output: UserProfile object, the account fields
+	* are null when there is no such user
+	*
+	**********************************************/
+	public static UserProfile load(ProfNetwork esql, String userId) throws SQLException{
+		List<List<String>> result = esql.executeQueryAndReturnResult(PROFILE_QUERY, userId);
+		if(result.isEmpty()){
+			return new UserProfile(userId, null, null, null, new ArrayList<String[]>(), new ArrayList<String[]>());
+		}
+		List<String> row = result.get(0);
+		return new UserProfile(userId, row.get(0), row.get(1), row.get(2), parseRows(row.get(3)), parseRows(row.get(4)));
+	}
+
+	/* the three query way profiles were read before, kept to compare against in ProfileBench */
+	public static UserProfile loadSeparately(ProfNetwork esql, String userId) throws SQLException{
+		List<List<String>> account = esql.executeQueryAndReturnResult("SELECT name, email, date_of_birth FROM usr WHERE userid = ?", userId);
+		List<String[]> work = readRows(esql, "SELECT company, role, location, start_date, end_date FROM work_expr WHERE userid = ?", userId);
+		List<String[]> education = readRows(esql, "SELECT institution_name, major, degree, start_date, end_date FROM educational_details WHERE userid = ?", userId);
+		if(account.isEmpty()){
+			return new UserProfile(userId, null, null, null, work, education);
+		}
+		return new UserProfile(userId, account.get(0).get(0), account.get(0).get(1), account.get(0).get(2), work, education);
+	}
+
+	/* prints every column of each row on one line, numbered from 1 */
+	public static void printRows(PrintStream out, List<String[]> rows){
+		for(int i = 0; i < rows.size(); i++){
+			out.print("\t "+(i + 1)+". ");
+			for(String value : rows.get(i)){
+				out.print(""+value+"");
+				out.print(" ");
+			}
+			out.println();
+		}
+	}
+
+	/*********************************************
+	* Method Name: parseRows
+	* Purpose: Decodes the json array of arrays made
+	* by json_agg(json_build_array(...)). Only the
+	* strings and nulls those arrays can hold are
+	* understood.
+	*
+	* Input: String json, null when there were no rows
+	*
+	* Output: the rows
+	*
+	**********************************************/
+	static List<String[]> parseRows(String json){
+		List<String[]> rows = new ArrayList<String[]>();
+		if(json == null){
+			return rows;
+		}
+		List<String> row = null;
+		StringBuilder value = new StringBuilder();
+		int depth = 0;
+		for(int i = 0; i < json.length(); i++){
+			char c = json.charAt(i);
+			if(c == '['){
+				if(++depth == 2){
+					row = new ArrayList<String>();
+				}
+			} else if(c == ']'){
+				if(depth-- == 2){
+					rows.add(row.toArray(new String[row.size()]));
+				}
+			} else if(c == 'n' && json.startsWith("null", i)){
+				row.add(null);
+				i += 3;
+			} else if(c == '"'){
+				value.setLength(0);
+				for(i++; json.charAt(i) != '"'; i++){
+					char d = json.charAt(i);
+					if(d == '\\'){
+						d = json.charAt(++i);
+						switch(d){
+							case 'b': d = '\b'; break;
+							case 'f': d = '\f'; break;
+							case 'n': d = '\n'; break;
+							case 'r': d = '\r'; break;
+							case 't': d = '\t'; break;
+							case 'u': d = (char) Integer.parseInt(json.substring(i + 1, i + 5), 16); i += 4; break;
+							default: break;
+						}
+					}
+					value.append(d);
+				}
+				row.add(value.toString());
+			}
+		}
+		return rows;
+	}
+
+	private static List<String[]> readRows(ProfNetwork esql, String query, String userId) throws SQLException{
+		final List<String[]> rows = new ArrayList<String[]>();
+		esql.executeQueryAndStream(query, new RowHandler(){
+			public void row(ResultSet rs) throws SQLException{
+				String[] row = new String[rs.getMetaData().getColumnCount()];
+				for(int i = 0; i < row.length; i++){
+					row[i] = rs.getString(i + 1);
+				}
+				rows.add(row);
+			}
+		}, userId);
+		return rows;
+	}
+} // end UserProfile
@@ -1,6 +1,20 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# the schema needs PostgreSQL 11 (partitioned tables with primary keys) and the
+# bundled pg73jdbc3 driver speaks protocol version 2, which PostgreSQL 14 removed
+VERSION=$(echo "SHOW server_version_num" | psql -p $PGPORT -t -A project)
+if [ -z "$VERSION" ] || [ "$VERSION" -lt 110000 ] || [ "$VERSION" -ge 140000 ]; then
+	echo "PostgreSQL 11 to 13 is needed, the server on port $PGPORT is ${VERSION:-not reachable}" >&2
+	exit 1
+fi
+# the bundled driver escapes quotes in strings with backslashes
+echo "ALTER DATABASE project SET standard_conforming_strings = off" | psql -p $PGPORT project
 psql -p $PGPORT project < $DIR/../src/triggers.sql
 psql -p $PGPORT project < $DIR/../src/create_tables.sql
-psql -p $PGPORT project < $DIR/../src/create_index.sql
-psql -p $PGPORT project < $DIR/../src/load_data.sql
+psql -p $PGPORT project < $DIR/../src/message_partitions.sql
+# loads data/*.csv and builds the indexes of create_index.sql once the rows are in
+# (needs the classes built by java/scripts/compile.sh)
+java -cp $DIR/../../java/classes:$DIR/../../java/lib/pg73jdbc3.jar BulkLoader project $PGPORT $USER $DIR/../../data $DIR/../src
+# connection_edge is filled from the loaded rows in one statement, so its
+# per row trigger is only made once the bulk load is done
+psql -p $PGPORT project < $DIR/../src/connection_edge.sql
@@ -0,0 +1,27 @@
+#!/bin/bash
+# Runs every query of the application with EXPLAIN ANALYZE without the
+# indexes from create_index.sql and again with them, so the plans can be
+# compared. Usage: explain_bench.sh [userid] [other userid] [full name]
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+USERID=${1:-Giovani}
+OTHER=${2:-Kallie_Johns}
+NAME=${3:-Harrison Toy}
+OUT=${OUT:-.}
+
+run_queries() {
+	psql -p $PGPORT project -v uid="$USERID" -v other="$OTHER" -v name="$NAME" -f $DIR/../src/explain_queries.sql > $1
+}
+
+psql -p $PGPORT project < $DIR/../src/drop_index.sql
+psql -p $PGPORT project -c "ANALYZE"
+run_queries $OUT/explain_before.txt
+
+psql -p $PGPORT project < $DIR/../src/create_index.sql
+psql -p $PGPORT project -c "ANALYZE"
+run_queries $OUT/explain_after.txt
+
+# one line per plan: the query label, its top scan types and the runtime
+for f in $OUT/explain_before.txt $OUT/explain_after.txt; do
+	echo "---- $f"
+	grep -E "^== |Scan|Execution Time|Total runtime" $f | sed -e 's/(cost=.*//' -e 's/^ *//'
+done
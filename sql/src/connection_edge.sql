@@ -0,0 +1,40 @@
+/* accepted connections stored once per direction, so "who is X connected to"
+   is a single range scan of the primary key: SELECT connectionId FROM
+   connection_edge WHERE userId = X. The table is kept in step with
+   connection_usr by the trigger below, and filled from the existing rows
+   when this file is run on a loaded database. */
+DROP TABLE IF EXISTS CONNECTION_EDGE;
+
+CREATE TABLE CONNECTION_EDGE(
+	userId varchar(50) NOT NULL,
+	connectionId varchar(50) NOT NULL,
+	PRIMARY KEY(userId,connectionId));
+
+CREATE OR REPLACE FUNCTION connection_edge_sync() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP <> 'INSERT' AND OLD.status = 'Accept' THEN
+		/* the pair can also be accepted through the row going the other way */
+		IF NOT EXISTS (SELECT 1 FROM connection_usr WHERE userId = OLD.connectionId AND connectionId = OLD.userId AND status = 'Accept') THEN
+			DELETE FROM connection_edge WHERE userId = OLD.userId AND connectionId = OLD.connectionId;
+			DELETE FROM connection_edge WHERE userId = OLD.connectionId AND connectionId = OLD.userId;
+		END IF;
+	END IF;
+	IF TG_OP <> 'DELETE' AND NEW.status = 'Accept' THEN
+		INSERT INTO connection_edge SELECT NEW.userId, NEW.connectionId
+			WHERE NOT EXISTS (SELECT 1 FROM connection_edge WHERE userId = NEW.userId AND connectionId = NEW.connectionId);
+		INSERT INTO connection_edge SELECT NEW.connectionId, NEW.userId
+			WHERE NOT EXISTS (SELECT 1 FROM connection_edge WHERE userId = NEW.connectionId AND connectionId = NEW.userId);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER connection_edge_trigger AFTER INSERT OR UPDATE OR DELETE ON CONNECTION_USR
+	FOR EACH ROW EXECUTE PROCEDURE connection_edge_sync();
+
+INSERT INTO connection_edge
+	SELECT userId, connectionId FROM connection_usr WHERE status = 'Accept'
+	UNION
+	SELECT connectionId, userId FROM connection_usr WHERE status = 'Accept';
+
+ANALYZE connection_edge;
@@ -0,0 +1,36 @@
+/* indexes for the lookups made by ProfNetwork.java */
+
+/* work_expr and educational_details are only read by userId, which is the
+   leading column of their primary keys, so they need no extra index */
+
+/* UserConnect.SearchNames matches the start of lower(name) with LIKE and
+   close spellings with the pg_trgm % operator */
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX usr_name_prefix_idx ON USR (lower(name) text_pattern_ops);
+CREATE INDEX usr_name_trgm_idx ON USR USING gin (lower(name) gin_trgm_ops);
+
+/* friend lists, ViewUserConnections and the connection graph load read
+   connection_edge (connection_edge.sql), whose primary key already has
+   both directions of every accepted connection */
+
+/* UserConnect.ViewRequest lists the requests waiting for a user */
+CREATE INDEX connection_request_idx ON CONNECTION_USR (connectionId, userId) WHERE status = 'Request';
+
+/* inbox pages: receiver and status first, then the keyset used by MessagePager.
+   Indexes on MESSAGE are made on every monthly partition. The archive has
+   the same ones, so a partition moved there keeps its indexes as they are. */
+CREATE INDEX message_receiver_status_time_idx ON MESSAGE (receiverId, status, send_time, msgId);
+CREATE INDEX message_archive_receiver_status_time_idx ON MESSAGE_ARCHIVE (receiverId, status, send_time, msgId);
+
+/* all received pages: the status filter there is Delivered OR Read, which
+   the index above can not return in send_time order, so it has its own */
+CREATE INDEX message_receiver_time_idx ON MESSAGE (receiverId, send_time, msgId);
+CREATE INDEX message_archive_receiver_time_idx ON MESSAGE_ARCHIVE (receiverId, send_time, msgId);
+
+/* outbox pages */
+CREATE INDEX message_sender_time_idx ON MESSAGE (senderId, send_time, msgId);
+CREATE INDEX message_archive_sender_time_idx ON MESSAGE_ARCHIVE (senderId, send_time, msgId);
+
+/* MessagePurger looks for messages deleted by both sides (delete_status 3) */
+CREATE INDEX message_purge_idx ON MESSAGE (msgId) WHERE delete_status = 3;
+CREATE INDEX message_archive_purge_idx ON MESSAGE_ARCHIVE (msgId) WHERE delete_status = 3;
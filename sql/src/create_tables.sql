@@ -1,6 +1,8 @@
 DROP TABLE WORK_EXPR;
 DROP TABLE EDUCATIONAL_DETAILS;
+DROP VIEW MESSAGE_ALL;
 DROP TABLE MESSAGE;
+DROP TABLE MESSAGE_ARCHIVE;
 DROP TABLE CONNECTION_USR;
 DROP TABLE USR;
 
@@ -33,14 +35,33 @@ CREATE TABLE EDUCATIONAL_DETAILS(
 	PRIMARY KEY(userId,major,degree),
 	FOREIGN KEY(userId) REFERENCES USR);
 
+/* partitioned by month of send_time, the partitions are made and moved
+   to MESSAGE_ARCHIVE by the functions of message_partitions.sql */
 CREATE TABLE MESSAGE(
-	msgId integer NOT NULL DEFAULT nextval('msgIDSequence') PRIMARY KEY, 
+	msgId integer NOT NULL DEFAULT nextval('msgIDSequence'), 
 	senderId varchar(50) NOT NULL,
 	receiverId varchar(50) NOT NULL,
 	contents varchar(500) NOT NULL,
-	send_time timestamp,
+	send_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
 	delete_status integer,
-	status varchar(30) NOT NULL);
+	status varchar(30) NOT NULL,
+	PRIMARY KEY(msgId,send_time)) PARTITION BY RANGE (send_time);
+
+/* the months no longer kept in MESSAGE, only read when a user asks for old mail */
+CREATE TABLE MESSAGE_ARCHIVE(
+	msgId integer NOT NULL, 
+	senderId varchar(50) NOT NULL,
+	receiverId varchar(50) NOT NULL,
+	contents varchar(500) NOT NULL,
+	send_time timestamp NOT NULL,
+	delete_status integer,
+	status varchar(30) NOT NULL,
+	PRIMARY KEY(msgId,send_time)) PARTITION BY RANGE (send_time);
+
+CREATE VIEW MESSAGE_ALL AS
+	SELECT * FROM MESSAGE
+	UNION ALL
+	SELECT * FROM MESSAGE_ARCHIVE;
 
 CREATE TABLE CONNECTION_USR(
 	userId varchar(50) NOT NULL, 
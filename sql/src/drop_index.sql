@@ -0,0 +1,15 @@
+/* removes the indexes from create_index.sql, used by explain_bench.sh and BulkLoader */
+DROP INDEX IF EXISTS usr_name_idx;
+DROP INDEX IF EXISTS usr_name_prefix_idx;
+DROP INDEX IF EXISTS usr_name_trgm_idx;
+DROP INDEX IF EXISTS connection_accept_user_idx;
+DROP INDEX IF EXISTS connection_accept_conn_idx;
+DROP INDEX IF EXISTS connection_request_idx;
+DROP INDEX IF EXISTS message_receiver_status_time_idx;
+DROP INDEX IF EXISTS message_sender_time_idx;
+DROP INDEX IF EXISTS message_archive_receiver_status_time_idx;
+DROP INDEX IF EXISTS message_archive_sender_time_idx;
+DROP INDEX IF EXISTS message_receiver_time_idx;
+DROP INDEX IF EXISTS message_archive_receiver_time_idx;
+DROP INDEX IF EXISTS message_purge_idx;
+DROP INDEX IF EXISTS message_archive_purge_idx;
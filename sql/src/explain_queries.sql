@@ -0,0 +1,52 @@
+/* the queries issued by ProfNetwork.java, run with the psql variables
+   uid (a userId), other (a second userId) and name (a full name) */
+\pset pager off
+
+\echo '== LogIn'
+EXPLAIN ANALYZE SELECT * FROM USR WHERE userId = :'uid' AND password = 'x';
+
+\echo '== UserConnect.SearchNames'
+EXPLAIN ANALYZE SELECT userid, name, lower(name) LIKE lower(:'name') || '%' AS prefix FROM usr WHERE lower(name) LIKE lower(:'name') || '%' OR lower(name) % lower(:'name') ORDER BY lower(name) LIKE lower(:'name') || '%' DESC, similarity(lower(name), lower(:'name')) DESC, userid LIMIT 50;
+
+\echo '== UserConnect.ConnectionList'
+EXPLAIN ANALYZE SELECT connectionid FROM connection_edge WHERE userid = :'uid';
+
+\echo '== UserConnect.ConnectionList, old union over connection_usr'
+EXPLAIN ANALYZE SELECT connectionid AS userid FROM connection_usr WHERE userID = :'uid' AND status = 'Accept' UNION ALL SELECT userid FROM connection_usr WHERE connectionid = :'uid' AND status = 'Accept';
+
+\echo '== Profile.ViewUserConnections'
+EXPLAIN ANALYZE SELECT connectionid FROM connection_edge WHERE userid = :'other' AND connectionid <> :'uid';
+
+\echo '== Profile.ViewUserConnections, old union over connection_usr'
+EXPLAIN ANALYZE SELECT connectionid AS userid FROM connection_usr WHERE userid = :'other' AND connectionid <> :'uid' AND status = 'Accept' UNION ALL SELECT userid FROM connection_usr WHERE userid <> :'uid' AND connectionid = :'other' AND status = 'Accept';
+
+\echo '== UserConnect.ViewRequest'
+EXPLAIN ANALYZE SELECT userid FROM connection_usr WHERE connectionid = :'uid' AND status = 'Request';
+
+\echo '== ConnectionGraph.load'
+EXPLAIN ANALYZE SELECT userid, connectionid FROM connection_edge WHERE userid < connectionid;
+
+\echo '== UserProfile.load'
+EXPLAIN ANALYZE SELECT u.name, u.email, u.date_of_birth, (SELECT json_agg(json_build_array(w.company, w.role, w.location, w.start_date, w.end_date)) FROM work_expr w WHERE w.userid = u.userid), (SELECT json_agg(json_build_array(e.institution_name, e.major, e.degree, e.start_date, e.end_date)) FROM educational_details e WHERE e.userid = u.userid) FROM usr u WHERE u.userid = :'uid';
+
+\echo '== UserProfile.loadSeparately'
+EXPLAIN ANALYZE SELECT name, email, date_of_birth FROM usr WHERE userid = :'uid';
+EXPLAIN ANALYZE SELECT company, role, location, start_date, end_date FROM work_expr WHERE userid = :'uid';
+EXPLAIN ANALYZE SELECT institution_name, major, degree, start_date, end_date FROM educational_details WHERE userid = :'uid';
+
+\echo '== Messenger new messages, first page'
+EXPLAIN ANALYZE SELECT msgid, senderid, send_time FROM message WHERE receiverid = :'uid' AND status = 'Delivered' AND (delete_status = 0 OR delete_status = 1) ORDER BY send_time DESC, msgid DESC LIMIT 21;
+
+\echo '== Messenger all received, first page'
+EXPLAIN ANALYZE SELECT msgid, senderid, send_time FROM message WHERE receiverid = :'uid' AND (status = 'Delivered' OR status = 'Read') AND (delete_status = 0 OR delete_status = 1) ORDER BY send_time DESC, msgid DESC LIMIT 21;
+
+\echo '== Messenger sent messages, older page'
+EXPLAIN ANALYZE SELECT msgid, receiverid, status, send_time FROM message WHERE senderid = :'uid' AND (delete_status = 0 OR delete_status = 2) AND send_time <= now() AND (send_time, msgid) < (now(), 2147483647) ORDER BY send_time DESC, msgid DESC LIMIT 21;
+
+\echo '== Messenger all received with old mail, first page'
+EXPLAIN ANALYZE SELECT msgid, senderid, send_time FROM message_all WHERE receiverid = :'uid' AND (status = 'Delivered' OR status = 'Read') AND (delete_status = 0 OR delete_status = 1) ORDER BY send_time DESC, msgid DESC LIMIT 21;
+
+\echo '== UserConnect.ViewRequest accept'
+BEGIN;
+EXPLAIN ANALYZE UPDATE connection_usr SET status = 'Accept' WHERE userid = :'other' AND connectionid = :'uid';
+ROLLBACK;
@@ -1,5 +0,0 @@
-COPY USR FROM '/home/csmajs/bstev002/database/Files/CS166_Project/data/Users.csv' WITH DELIMITER ',' CSV HEADER;
-COPY WORK_EXPR FROM '/home/csmajs/bstev002/database/Files/CS166_Project/data/Work_Ex.csv' WITH DELIMITER ',' CSV HEADER;
-COPY EDUCATIONAL_DETAILS FROM '/home/csmajs/bstev002/database/Files/CS166_Project/data/Edu_Det.csv' WITH DELIMITER ',' CSV HEADER;
-COPY MESSAGE FROM '/home/csmajs/bstev002/database/Files/CS166_Project/data/Messages.csv' WITH DELIMITER ',' CSV HEADER;
-COPY CONNECTION_USR FROM '/home/csmajs/bstev002/database/Files/CS166_Project/data/Connection.csv' WITH DELIMITER ',' CSV HEADER;
@@ -0,0 +1,62 @@
+/* MESSAGE keeps one partition per month of send_time. Recent months stay
+   attached to MESSAGE, which is all the Messenger menus read by default.
+   Months older than the hot window are detached and attached to
+   MESSAGE_ARCHIVE, which is only read through MESSAGE_ALL when a user asks
+   for old mail. Both functions are run daily by the MessageArchiver of a
+   ProfNetwork -server process. Without one, run them from cron:
+     psql project -c "SELECT create_message_partitions(2)" -c "SELECT archive_message_partitions(6)"
+   There is no default partition, a default partition would keep rows
+   that are never archived and stop later months from being made. Sends
+   always use the current time, so months made ahead are enough. */
+
+/* makes the partitions for the current month and the next months_ahead
+   months, named message_pYYYY_MM. Returns how many were made. */
+CREATE OR REPLACE FUNCTION create_message_partitions(months_ahead integer) RETURNS integer AS $$
+DECLARE
+	month date := date_trunc('month', CURRENT_TIMESTAMP);
+	made integer := 0;
+BEGIN
+	FOR i IN 0..months_ahead LOOP
+		IF to_regclass('message_p' || to_char(month, 'YYYY_MM')) IS NULL THEN
+			EXECUTE format('CREATE TABLE %I PARTITION OF message FOR VALUES FROM (%L) TO (%L)',
+				'message_p' || to_char(month, 'YYYY_MM'), month, month + interval '1 month');
+			made := made + 1;
+		END IF;
+		month := month + interval '1 month';
+	END LOOP;
+	RETURN made;
+END;
+$$ LANGUAGE plpgsql;
+
+/* moves the monthly partitions that ended more than hot_months months ago
+   from MESSAGE to MESSAGE_ARCHIVE. Only catalog entries change, no rows
+   are copied. The check constraint lets ATTACH skip its validation scan.
+   Returns how many partitions were moved. */
+CREATE OR REPLACE FUNCTION archive_message_partitions(hot_months integer) RETURNS integer AS $$
+DECLARE
+	cutoff date := date_trunc('month', CURRENT_TIMESTAMP) - make_interval(months => hot_months);
+	part record;
+	month date;
+	moved integer := 0;
+BEGIN
+	FOR part IN
+		SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+		WHERE i.inhparent = 'message'::regclass AND c.relname LIKE 'message\_p%'
+		ORDER BY c.relname
+	LOOP
+		month := to_date(substr(part.relname, 10), 'YYYY_MM');
+		IF month < cutoff THEN
+			EXECUTE format('ALTER TABLE message DETACH PARTITION %I', part.relname);
+			EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I CHECK (send_time >= %L AND send_time < %L)',
+				part.relname, part.relname || '_range', month, month + interval '1 month');
+			EXECUTE format('ALTER TABLE message_archive ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+				part.relname, month, month + interval '1 month');
+			moved := moved + 1;
+		END IF;
+	END LOOP;
+	RETURN moved;
+END;
+$$ LANGUAGE plpgsql;
+
+/* a year ahead, so sends keep working even if the daily job is not set up yet */
+SELECT create_message_partitions(12);
@@ -2,28 +2,37 @@
 CREATE SEQUENCE msgIDSequence;
 SELECT setval('msgIDSequence', 27811);
 
-/* searches for valid connection possibilities */
-CREATE OR REPLACE FUNCTION conn_search(connName varchar) RETURNS VOID AS $$
-DECLARE
-	tempI connection_usr%rowtype;
-	tempJ connection_usr%rowtype;
-	tempK connection_usr%rowtype;
-	tableName ALIAS FOR $1;
-BEGIN 
-		BEGIN
-			RAISE NOTICE 'table name is: %', tableName;	
-			EXECUTE 'CREATE TABLE '|| quote_ident(tableName) ||' (userId varchar(50))';
-		EXCEPTION WHEN duplicate_table THEN
-
-		END;
-	FOR tempI IN SELECT connectionid AS userid FROM connection_usr WHERE userid = connName AND status = 'Accept' UNION ALL SELECT userid FROM connection_usr WHERE connectionid = connName AND status = 'Accept' LOOP
-			FOR tempJ IN SELECT connectionid AS userid FROM connection_usr WHERE userid = tempI.userid AND connectionid <> connName AND status = 'Accept' UNION SELECT userid FROM connection_usr WHERE connectionid = tempI.userid AND userid <> connName AND status = 'Accept'  LOOP				  
-				RAISE NOTICE 'TempJ is: %', tempJ.userid;
-				EXECUTE 'INSERT INTO '|| quote_ident(tableName) ||' ' || 'VALUES (' || quote_literal(tempJ.userid) || ')';
-				FOR tempK IN SELECT connectionid AS userid FROM connection_usr WHERE userid = tempJ.userid AND connectionid <> tempI.userid AND status = 'Accept' UNION ALL SELECT userid FROM connection_usr WHERE connectionid = tempJ.userid AND userid <> tempI.userid AND status = 'Accept' LOOP
-					EXECUTE 'INSERT INTO '|| quote_ident(tableName) ||' ' || 'VALUES (' || quote_literal(tempK.userid) || ')';	
-				END LOOP;
-			END LOOP;
-	END LOOP;
+/* sends a connection request in one round trip. Users with 5 or more
+   connections may only ask users within 3 connection levels. Returns
+     0 the request was sent
+     1 there is already a request or reply between the two users
+     2 the users are already connected
+     3 the receiver is not within 3 connection levels
+     4 there is no such receiver, or it is the sender
+   Calls for the same two users, in either direction, are run one at a
+   time by a transaction lock on the pair, so the checks below still hold
+   when the row is inserted. */
+CREATE OR REPLACE FUNCTION send_connection_request(sender varchar, receiver varchar) RETURNS integer AS $$
+BEGIN
+	IF sender = receiver OR NOT EXISTS (SELECT 1 FROM usr WHERE userId = receiver) THEN
+		RETURN 4;
+	END IF;
+	/* A to B and B to A take the same lock, it is released at commit */
+	PERFORM pg_advisory_xact_lock(hashtext(least(sender, receiver)), hashtext(greatest(sender, receiver)));
+	IF EXISTS (SELECT 1 FROM connection_edge WHERE userId = sender AND connectionId = receiver) THEN
+		RETURN 2;
+	END IF;
+	IF EXISTS (SELECT 1 FROM connection_usr WHERE (userId = sender AND connectionId = receiver) OR (userId = receiver AND connectionId = sender)) THEN
+		RETURN 1;
+	END IF;
+	IF (SELECT count(*) FROM connection_edge WHERE userId = sender) > 4
+		/* 2 levels out from the sender meet 1 level out from the receiver */
+		AND NOT EXISTS (SELECT 1 FROM connection_edge a JOIN connection_edge b ON b.userId = a.connectionId
+			WHERE a.userId = sender AND (b.connectionId = receiver
+				OR EXISTS (SELECT 1 FROM connection_edge c WHERE c.userId = b.connectionId AND c.connectionId = receiver))) THEN
+		RETURN 3;
+	END IF;
+	INSERT INTO connection_usr (userId, connectionId, status) VALUES (sender, receiver, 'Request');
+	RETURN 0;
 END
-$$ LANGUAGE plpgsql;	
+$$ LANGUAGE plpgsql;